@@ -18,6 +18,11 @@ repositories {
 
 dependencies {
     implementation("org.jetbrains:annotations:24.0.1")
+
+    // Use JUnit Jupiter for testing.
+    testImplementation(platform("org.junit:junit-bom:5.10.2"))
+    testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
 }
 
 application {
@@ -25,6 +30,11 @@ application {
     mainClass.set("strategy.App")
 }
 
+tasks.named<Test>("test") {
+    // Use JUnit Platform for unit tests.
+    useJUnitPlatform()
+}
+
 tasks.named<JavaExec>("run") {
     standardInput = System.`in`
 }
\ No newline at end of file
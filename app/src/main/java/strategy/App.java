@@ -1,8 +1,21 @@
 package strategy;
 
+import java.util.Arrays;
+import strategy.metrics.TurnMetrics;
+import strategy.session.SessionHost;
+
 public class App {
 
   public static void main(String[] args) {
+    TurnMetrics.register();
+    if (Arrays.asList(args).contains("--headless")) {
+      Simulation.main(args);
+      return;
+    }
+    if (Arrays.asList(args).contains("--host")) {
+      SessionHost.main(args);
+      return;
+    }
     new Game(Config.WIDTH, Config.HEIGHT).play();
   }
 }
@@ -5,14 +5,37 @@ import strategy.producible.unit.modifier.RiderModifier;
 import strategy.producible.unit.modifier.UnitModifier;
 import strategy.world.ResourceType;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 public class Config {
   public static final int HEIGHT = 20;
   public static final int WIDTH = 20;
   public static final int INITIAL_FOOD_AMOUNT = 30;
 
+  /** Side, in cells, of the buckets of the per-resource spatial index. */
+  public static final int RESOURCE_INDEX_BUCKET_SIZE = 16;
+
+  /** Side, in cells, of the chunks the world is generated by. */
+  public static final int CHUNK_SIZE = 64;
+
+  /** Chunks a {@link strategy.world.WorldMap.Layout#CHUNKED} world tries to keep in memory. */
+  public static final int CHUNK_BUDGET = 1024;
+
+  /** How far units look for resources or room in a chunked world. */
+  public static final int CHUNKED_SEARCH_RADIUS = 64;
+
+  /** Bytes of a snapshot file mapped at once; must be a multiple of 8. */
+  public static final int SNAPSHOT_SEGMENT_SIZE = 1 << 30;
+
+  /** Side, in cells, of the regions whose units are planned together in parallel turns. */
+  public static final int PARALLEL_REGION_SIZE = 64;
+
+  public static final int HEADLESS_DEFAULT_TURNS = 1000;
+  public static final int HEADLESS_DEFAULT_INTERVAL = 100;
+
   public static final List<Class<? extends UnitModifier>> UNIT_MODIFIERS =
       List.of(ExpertModifier.class, RiderModifier.class);
 
@@ -35,14 +58,17 @@ public class Config {
   public static final Map<ResourceType, Integer> TOOL_COST =
       Map.of(ResourceType.ROCK, 1, ResourceType.WOOD, 1);
   public static final int TOOL_BASE_EFFICIENCY = 1;
+  /** Sorted so that iteration order, and therefore seeded runs, are stable across JVMs. */
   public static final Map<String, List<ResourceType>> JOBS =
-      Map.of(
-          "Miner",
-          List.of(ResourceType.ROCK, ResourceType.GOLD),
-          "Lumberjack",
-          List.of(ResourceType.WOOD),
-          "Farmer",
-          List.of(ResourceType.FOOD));
+      Collections.unmodifiableSortedMap(
+          new TreeMap<>(
+              Map.of(
+                  "Miner",
+                  List.of(ResourceType.ROCK, ResourceType.GOLD),
+                  "Lumberjack",
+                  List.of(ResourceType.WOOD),
+                  "Farmer",
+                  List.of(ResourceType.FOOD))));
 
   public static final double GROUP_EFFICIENCY_MULTIPLIER = 1.1;
 
@@ -1,53 +1,112 @@
 package strategy;
 
+import java.io.PrintStream;
 import java.util.*;
 import strategy.building.IBuilding;
 import strategy.building.ToolBuilding;
 import strategy.building.UnitBuilding;
+import strategy.metrics.TurnMetrics;
+import strategy.metrics.TurnMetrics.Phase;
 import strategy.producible.Tool;
 import strategy.producible.unit.Group;
 import strategy.producible.unit.Unit;
 import strategy.producible.unit.modifier.UnitModifier;
+import strategy.session.ConsoleSession;
+import strategy.session.Session;
 import strategy.world.Cell;
 import strategy.world.Inventory;
 import strategy.world.ResourceType;
 import strategy.world.WorldMap;
 
-public class Game {
+public class Game implements AutoCloseable {
+  /** Keys of the random streams derived from the seed of the game, see {@link Utils#seed}. */
+  private static final long WORLD_STREAM = 0;
+
+  private static final long UNITS_STREAM = 1;
+  private static final long BUILDINGS_STREAM = 2;
+
   private final WorldMap worldMap;
   private final Inventory inventory;
+  private final long seed;
+  private final Renderer renderer = new Renderer();
+  /** Where the player's commands come from, see {@link #play(Session)}. */
+  private Session session = ConsoleSession.get();
+  /** Whether the player is gone, so that the game ends at the next prompt. */
+  private boolean gone = false;
 
   public Game(final int width, final int height) {
+    this(width, height, 1, WorldMap.Layout.OBJECT, Utils.newSeed());
+  }
+
+  /**
+   * Creates a new game with a randomly generated world.
+   *
+   * @param unitsPerJob how many starting units to spawn for each job in {@link Config#JOBS}
+   * @param layout how the cells of the world are stored
+   * @param seed seed of the game: the same seed always generates the same world and units
+   */
+  public Game(
+      final int width,
+      final int height,
+      final int unitsPerJob,
+      final WorldMap.Layout layout,
+      final long seed) {
+    this.seed = seed;
+    SplittableRandom random = Utils.random(seed, UNITS_STREAM);
     ArrayList<Unit> units = new ArrayList<>();
     Config.JOBS.forEach(
         (job, resources) -> {
-          List<UnitModifier> modifiers = new ArrayList<>();
-          for (Class<? extends UnitModifier> clazz : Config.UNIT_MODIFIERS) {
-            try {
-              modifiers.add(clazz.getDeclaredConstructor().newInstance());
-            } catch (Exception e) {
-              e.printStackTrace();
+          for (int i = 0; i < unitsPerJob; i++) {
+            List<UnitModifier> modifiers = new ArrayList<>();
+            for (Class<? extends UnitModifier> clazz : Config.UNIT_MODIFIERS) {
+              try {
+                modifiers.add(clazz.getDeclaredConstructor().newInstance());
+              } catch (Exception e) {
+                e.printStackTrace();
+              }
             }
+            Unit unit =
+                new Unit(random.nextInt(width), random.nextInt(height), modifiers);
+            unit.setTool(Tool.of(1, resources));
+            units.add(unit);
           }
-          Unit unit =
-              new Unit((int) (Math.random() * width), (int) (Math.random() * height), modifiers);
-          unit.setTool(new Tool(1, resources));
-          units.add(unit);
         });
-    worldMap = new WorldMap(width, height);
+    worldMap = new WorldMap(width, height, layout, worldSeed(seed));
     worldMap.insertUnits(units);
     inventory = new Inventory();
     inventory.addResources(ResourceType.FOOD, Config.INITIAL_FOOD_AMOUNT);
   }
 
+  /** Seed of the world of a game, derived from the seed of the game. */
+  static long worldSeed(final long seed) {
+    return Utils.seed(seed, WORLD_STREAM);
+  }
+
+  /** Creates a game from a saved world and inventory, see {@link Snapshot}. */
+  Game(final WorldMap worldMap, final Inventory inventory, final long seed) {
+    this.worldMap = worldMap;
+    this.inventory = inventory;
+    this.seed = seed;
+  }
+
+  /** Plays the game at the terminal. */
   public void play() {
-    Scanner scanner = new Scanner(System.in);
-    System.out.println("Welcome to the game!\nUse 'help' to get help");
+    play(ConsoleSession.get());
+  }
+
+  /**
+   * Plays the game with the player of a session, until they quit, win, lose or are gone. Every
+   * prompt of the game reads from the session, and everything is printed to it.
+   */
+  public void play(final Session session) {
+    this.session = session;
+    out().println("Welcome to the game!\nUse 'help' to get help");
     boolean shouldQuit = false;
     render();
-    while (!shouldQuit) {
-      System.out.print("main> ");
-      String input = scanner.nextLine();
+    while (!shouldQuit && !gone) {
+      out().print("main> ");
+      String input = readLine();
+      if (gone) break;
       switch (input) {
         case "h", "help" -> helpMain();
         case "t", "turn" -> {
@@ -60,135 +119,103 @@ public class Game {
         case "p", "purchase" -> purchase();
         case "i", "inspect" -> inspect();
         case "r", "render" -> render();
+        case "d", "diff" -> toggleDiff();
         case "q", "quit" -> shouldQuit = quit();
-        default -> System.out.println("Use 'help' to get help");
+        default -> out().println("Use 'help' to get help");
       }
     }
   }
 
+  private void toggleDiff() {
+    renderer.setDiff(!renderer.isDiff());
+    out().println(
+        renderer.isDiff() ? "Only showing rows that changed" : "Showing the whole map");
+  }
+
+  private PrintStream out() {
+    return session.out();
+  }
+
+  /** Reads the player's next line, or an empty line once they are gone, see {@link #gone}. */
+  private String readLine() {
+    String line = session.readLine();
+    if (line == null) {
+      gone = true;
+      return "";
+    }
+    return line;
+  }
+
   private boolean quit() {
-    System.out.print("Are you sure you want to quit? (y/N)\nquit> ");
-    Scanner scanner = new Scanner(System.in);
-    String input = scanner.nextLine();
+    out().print("Are you sure you want to quit? (y/N)\nquit> ");
+    String input = readLine();
     return input.equalsIgnoreCase("y") || input.equalsIgnoreCase("yes");
   }
 
   private boolean turn() {
-    switch (worldMap.turn(inventory)) {
+    switch (step()) {
       case WON -> {
-        System.out.println("You won!");
+        out().println("You won!");
         return true;
       }
       case LOST -> {
-        System.out.println("You lost!");
+        out().println("You lost!");
         return true;
       }
-      case RUNNING -> inventory
-          .getBuildings()
-          .forEach(building -> building.produce(worldMap, inventory));
     }
     return false;
   }
 
-  private void separator() {
-    for (int i = 0; i < 80; i++) {
-      System.out.print('-');
+  /**
+   * <b>Plays a full turn without any user interaction.</b>
+   *
+   * <p>Every unit plays its turn, then the buildings due to produce do if the game is still running.
+   *
+   * @return the status of the game after the turn
+   */
+  public Status step() {
+    long start = TurnMetrics.start();
+    Status status = worldMap.turn(inventory);
+    if (status == Status.RUNNING) {
+      inventory.produce(worldMap);
     }
-    System.out.print('\n');
+    TurnMetrics.end(Phase.TURN, start);
+    return status;
   }
 
-  public void render() {
-    separator();
-    System.out.print("Inventory: ");
-    System.out.println(
-        Arrays.stream(ResourceType.values())
-            .map(type -> type + ": " + inventory.getResources(type))
-            .reduce((a, b) -> a + ", " + b)
-            .orElse(""));
-    separator();
-    List<IBuilding> buildings = inventory.getBuildings();
-    if (!buildings.isEmpty()) {
-      System.out.println("Buildings:");
-      buildings.forEach(System.out::println);
-      separator();
-    }
-    Queue<Unit> units = new ArrayDeque<>();
-    int cellWidth =
-        String.valueOf(
-                    Arrays.stream(ResourceType.values())
-                        .mapToInt(ResourceType::getMaxVeinSize)
-                        .max()
-                        .orElse(0))
-                .length()
-            + 3;
+  public WorldMap getWorldMap() {
+    return worldMap;
+  }
 
-    // Print column numbers
-    for (int i = 0; i < String.valueOf(worldMap.height()).length() + 2; i++) {
-      System.out.print(' ');
-    }
-    for (int i = 0; i < worldMap.width(); i++) {
-      StringBuilder iString = new StringBuilder(String.valueOf(i));
-      while (iString.length() < cellWidth + 1) {
-        iString.append(" ");
-      }
-      System.out.print(iString);
-    }
-    System.out.println("| Units:");
-    for (int lineCount = 0; lineCount < worldMap.height(); lineCount++) {
-      List<Cell> row = worldMap.cells().get(lineCount);
-      StringBuilder lineCountBuilder = new StringBuilder(String.valueOf(lineCount));
-      while (lineCountBuilder.length() < String.valueOf(worldMap.height()).length() + 1) {
-        lineCountBuilder.append(" ");
-      }
-      System.out.print(lineCountBuilder);
-      row.forEach(
-          cell -> {
-            StringBuilder displayBuilder = new StringBuilder();
-            if (cell.getUnit() != null) {
-              units.add(cell.getUnit());
-              if (cell.getUnit().hasPlayed()) {
-                displayBuilder.append('{');
-              } else if (cell.getUnit().canMine()) {
-                displayBuilder.append('[');
-              } else {
-                displayBuilder.append('(');
-              }
-            } else {
-              displayBuilder.append(' ');
-            }
-            if (cell.getAmount() > 0) {
-              displayBuilder.append(cell.getType().getSymbol());
-              displayBuilder.append(cell.getAmount());
-            }
-            while (displayBuilder.length() < cellWidth) {
-              displayBuilder.append(' ');
-            }
-            if (cell.getUnit() != null) {
-              if (cell.getUnit().hasPlayed()) {
-                displayBuilder.append('}');
-              } else if (cell.getUnit().canMine()) {
-                displayBuilder.append(']');
-              } else {
-                displayBuilder.append(')');
-              }
-            } else {
-              displayBuilder.append(' ');
-            }
-            System.out.print(displayBuilder);
-          });
-      System.out.print(" | ");
-      while (!units.isEmpty()) {
-        Unit unit = units.remove();
-        System.out.print(unit);
-        System.out.print(' ');
-      }
-      System.out.print('\n');
-    }
-    separator();
+  public Inventory getInventory() {
+    return inventory;
+  }
+
+  /** Seed of the game, to replay it. */
+  public long getSeed() {
+    return seed;
+  }
+
+  /**
+   * Stops the threads planning the turns, see {@link WorldMap#setParallelism(int)}. The game can
+   * still be played afterwards, on the thread playing it.
+   */
+  @Override
+  public void close() {
+    worldMap.setParallelism(1);
+  }
+
+  /** Seed of the next building purchased: the n-th building gets stream n of its own stream. */
+  private long nextBuildingSeed() {
+    return Utils.seed(Utils.seed(seed, BUILDINGS_STREAM), inventory.getBuildings().size());
+  }
+
+  public void render() {
+    renderer.render(this, out());
   }
 
   private void helpMain() {
-    System.out.print(
+    out().print(
         """
         List of commands available:
         h, help         Show this help menu
@@ -197,12 +224,13 @@ public class Game {
         p, purchase     Purchase a new building
         i, inspect      Inspect the contents of a specific tile
         r, render       Render the game map again
+        d, diff         Toggle showing only the rows of the map that changed
         q, quit         Quit the game
         """);
   }
 
   private void helpManual() {
-    System.out.print(
+    out().print(
         """
         List of commands available:
         h, help         Show this help menu
@@ -215,18 +243,22 @@ public class Game {
   }
 
   private void inspect() {
-    Scanner scanner = new Scanner(System.in);
-    System.out.print(
+    out().print(
         "Enter the coordinates of the cell you wish to inspect (x and y separated by a space):\ninspect> ");
-    String[] coordinates = scanner.nextLine().split(" ");
+    String[] coordinates = readLine().split(" ");
     if (coordinates.length != 2) {
-      System.out.println("Invalid coordinates");
+      out().println("Invalid coordinates");
+      return;
     }
     try {
       int x = Integer.parseInt(coordinates[0]);
       int y = Integer.parseInt(coordinates[1]);
+      if (!isInWorld(x, y)) {
+        out().println("Invalid coordinates");
+        return;
+      }
       Cell cell = worldMap.getCell(x, y);
-      System.out.printf(
+      out().printf(
           "Cell at (%d %d):\n  Resources: %s\n",
           cell.getX(),
           cell.getY(),
@@ -234,64 +266,71 @@ public class Game {
       Unit unit = cell.getUnit();
       if (unit != null) {
         if (unit instanceof Group) {
-          System.out.println("  Unit: Group");
-          ((Group) unit).getUnits().forEach(u -> System.out.printf("    - %s\n", u.getJob()));
+          out().println("  Unit: Group");
+          ((Group) unit).getUnits().forEach(u -> out().printf("    - %s\n", u.getJob()));
         } else {
-          System.out.printf("  Unit: %s\n", unit.getJob());
+          out().printf("  Unit: %s\n", unit.getJob());
         }
       }
     } catch (NumberFormatException e) {
-      System.out.println("Invalid coordinates");
+      out().println("Invalid coordinates");
     }
   }
 
+  private boolean isInWorld(final int x, final int y) {
+    return x >= 0 && x < worldMap.width() && y >= 0 && y < worldMap.height();
+  }
+
   public void turnManual() {
     List<Unit> units = worldMap.getUnits().stream().filter(u -> !u.hasPlayed()).toList();
     if (units.isEmpty()) {
-      System.out.println("No units left to play. Use 'turn' to go to the next turn.");
+      out().println("No units left to play. Use 'turn' to go to the next turn.");
       return;
     }
-    System.out.println("List of possible units:");
+    out().println("List of possible units:");
     for (int i = 0; i < units.size(); i++) {
       Unit unit = units.get(i);
-      System.out.printf("  %d: (%d, %d) %s\n", i, unit.getX(), unit.getY(), unit.getJob());
+      out().printf("  %d: (%d, %d) %s\n", i, unit.getX(), unit.getY(), unit.getJob());
     }
-    System.out.print("Enter the number of the unit you wish to play:\nmanual> ");
-    Scanner scanner = new Scanner(System.in);
+    out().print("Enter the number of the unit you wish to play:\nmanual> ");
     int index;
     try {
-      index = Integer.parseInt(scanner.nextLine());
+      index = Integer.parseInt(readLine());
     } catch (NumberFormatException e) {
-      System.out.println("Invalid number");
+      out().println("Invalid number");
       return;
     }
     if (index < 0 || index >= units.size()) {
-      System.out.println("Invalid number");
+      out().println("Invalid number");
       return;
     }
     Unit unit = units.get(index);
-    System.out.printf(
+    out().printf(
         "Playing unit %d: (%d %d) %s\n", index, unit.getX(), unit.getY(), unit.getJob());
     helpManual();
     boolean shouldLoop = true;
-    while (shouldLoop) {
-      System.out.print("manual> ");
-      String action = scanner.nextLine();
+    while (shouldLoop && !gone) {
+      out().print("manual> ");
+      String action = readLine();
       switch (action) {
         case "m", "move" -> {
           unit.eat(inventory);
-          System.out.print("Enter the coordinates of the cell you wish to move to: ");
-          String[] coordinates = scanner.nextLine().split(" ");
+          out().print("Enter the coordinates of the cell you wish to move to: ");
+          String[] coordinates = readLine().split(" ");
           if (coordinates.length != 2) {
-            System.out.println("Invalid coordinates");
+            out().println("Invalid coordinates");
             return;
           }
           try {
             int x = Integer.parseInt(coordinates[0]);
             int y = Integer.parseInt(coordinates[1]);
-            unit.move(x, y, worldMap);
+            if (isInWorld(x, y)) {
+              unit.move(x, y, worldMap);
+            } else {
+              out().println("Invalid coordinates");
+            }
           } catch (NumberFormatException e) {
-            System.out.println("Invalid coordinates");
+            out().println("Invalid coordinates");
           }
           shouldLoop = false;
           unit.setHasPlayed(true);
@@ -299,9 +338,9 @@ public class Game {
         case "e", "extract" -> {
           unit.eat(inventory);
           if (unit.mine(worldMap, inventory)) {
-            System.out.println("Mined successfully.");
+            out().println("Mined successfully.");
           } else {
-            System.out.println("Could not mine.");
+            out().println("Could not mine.");
           }
           shouldLoop = false;
           unit.setHasPlayed(true);
@@ -310,54 +349,59 @@ public class Game {
         case "i", "inspect" -> inspect();
         case "c", "cancel" -> shouldLoop = false;
         case "h", "help" -> helpManual();
-        default -> System.out.println("Invalid action");
+        default -> out().println("Invalid action");
       }
     }
   }
 
   public void purchase() {
-    System.out.println("List of possible factories:");
-    System.out.println("u, unit         Unit Factory");
-    System.out.println("t, tool         Tool Factory");
-    System.out.print("Enter the type of factory you wish to purchase:\npurchase> ");
-    Scanner scanner = new Scanner(System.in);
-    String factory = scanner.nextLine();
+    out().println("List of possible factories:");
+    out().println("u, unit         Unit Factory");
+    out().println("t, tool         Tool Factory");
+    out().print("Enter the type of factory you wish to purchase:\npurchase> ");
+    String factory = readLine();
     switch (factory) {
       case "u", "unit" -> {
         if (inventory.containsResources(IBuilding.getCost())) {
-          System.out.println("Select the type of unit you wish to produce:");
-          Config.JOBS.forEach((key, value) -> System.out.printf("  %s %s\n", key, value));
-          System.out.print("purchase> ");
-          String job = scanner.nextLine();
+          out().println("Select the type of unit you wish to produce:");
+          Config.JOBS.forEach((key, value) -> out().printf("  %s %s\n", key, value));
+          out().print("purchase> ");
+          String job = readLine();
           if (!Config.JOBS.containsKey(job)) {
-            System.out.println("Invalid unit");
+            out().println("Invalid unit");
             return;
           }
           List<ResourceType> resources = Config.JOBS.get(job);
-          inventory.removeResources(IBuilding.getCost());
-          inventory.addBuilding(new UnitBuilding(resources));
+          if (!inventory.tryRemoveResources(IBuilding.getCost())) {
+            out().println("Not enough resources");
+            return;
+          }
+          inventory.addBuilding(new UnitBuilding(resources, nextBuildingSeed()));
         } else {
-          System.out.println("Not enough resources");
+          out().println("Not enough resources");
         }
       }
       case "t", "tool" -> {
         if (inventory.containsResources(IBuilding.getCost())) {
-          System.out.println("Select the type of unit you wish to produce tools for:");
-          Config.JOBS.forEach((key, value) -> System.out.printf("  %s (%s)\n", key, value));
-          System.out.print("purchase> ");
-          String tool = scanner.nextLine();
+          out().println("Select the type of unit you wish to produce tools for:");
+          Config.JOBS.forEach((key, value) -> out().printf("  %s (%s)\n", key, value));
+          out().print("purchase> ");
+          String tool = readLine();
           if (!Config.JOBS.containsKey(tool)) {
-            System.out.println("Invalid unit");
+            out().println("Invalid unit");
             return;
           }
           List<ResourceType> resources = Config.JOBS.get(tool);
-          inventory.removeResources(IBuilding.getCost());
+          if (!inventory.tryRemoveResources(IBuilding.getCost())) {
+            out().println("Not enough resources");
+            return;
+          }
           inventory.addBuilding(new ToolBuilding(resources));
         } else {
-          System.out.println("Not enough resources");
+          out().println("Not enough resources");
         }
       }
-      default -> System.out.println("Invalid factory");
+      default -> out().println("Invalid factory");
     }
   }
 
@@ -0,0 +1,576 @@
+package strategy;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import strategy.building.IBuilding;
+import strategy.building.ProductionScheduler;
+import strategy.producible.unit.Group;
+import strategy.producible.unit.Unit;
+import strategy.world.Inventory;
+import strategy.world.ResourceType;
+import strategy.world.WorldMap;
+
+/**
+ * <b>Records the changes of each turn of a game to an append-only journal, to replay them.</b>
+ *
+ * <p>The journal starts from a {@link Snapshot} of the game, saved next to it with a {@code .base}
+ * suffix. The journal itself starts with {@link #MAGIC}, the {@link #VERSION} of the format,
+ * whether records are compressed, the turn of the snapshot and its units, written as changes from
+ * an empty map. Each turn then appends a record:
+ *
+ * <ol>
+ *   <li>the turn, and the lengths of the two parts that follow;
+ *   <li>the cells whose amount changed, as varints: their count, then for each of them, sorted by
+ *       index, the distance from the previous index and the new amount;
+ *   <li>the other changes: a bitmask of the resources whose amount changed and their new amounts,
+ *       the number of turns the buildings played, the buildings that produced or were added, the
+ *       units that left the map, and the units that entered it, moved or changed.
+ * </ol>
+ *
+ * <p>Both parts are deflated when the journal is compressed. Buildings are written whole, by
+ * position, and a building that is not recorded only waited or failed again the same way, which a
+ * replay plays in constant time, see {@link ProductionScheduler#catchUp(IBuilding, int)}. Units,
+ * members of groups included, are known by their {@link Unit#getSequence()}: a unit that moved is
+ * recorded by its cell and its place in the group there, and a unit whose state changed by its
+ * {@link Unit#writeState}, so that a unit walking to its next cell only takes a few bytes.
+ * Buildings and states are written with their length, for a replay to keep their bytes without
+ * reading them. Replaying up to a turn applies the changes of every record up to it, which is much
+ * quicker than playing the turns again, and only reads the buildings and units at the end.
+ */
+public final class Journal implements Closeable {
+  /** "STJR" in ASCII. */
+  static final int MAGIC = 0x524a5453;
+
+  static final int VERSION = 4;
+
+  private static final ResourceType[] TYPES = ResourceType.values();
+  /** Flags of a recorded unit: it was placed on another cell, or in another place in its group. */
+  private static final int PLACED = 1;
+  /** Flags of a recorded unit: its state changed. */
+  private static final int CHANGED = 2;
+
+  private final WorldMap worldMap;
+  private final Inventory inventory;
+  private final DataOutputStream out;
+  private final boolean compressed;
+  private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+  private final Deflater deflater;
+  /** Amounts of the resources as last recorded, by type ordinal. */
+  private final int[] amounts = new int[TYPES.length];
+  /** {@link Inventory#getProductionTurns()} as last recorded. */
+  private int productionTurns;
+  /** A building being recorded. */
+  private final Bytes building = new Bytes();
+  /** Units as last recorded, and as of the turn being recorded. */
+  private UnitTable recorded = new UnitTable();
+
+  private UnitTable current = new UnitTable();
+  /** Position plus one of each unit in {@link #recorded}, by sequence, or 0 for units not in it. */
+  private int[] positions = new int[0];
+
+  private Journal(final Game game, final DataOutputStream out, final boolean compressed) {
+    this.worldMap = game.getWorldMap();
+    this.inventory = game.getInventory();
+    this.out = out;
+    this.compressed = compressed;
+    this.deflater = compressed ? new Deflater(Deflater.BEST_SPEED) : null;
+    for (int i = 0; i < TYPES.length; i++) {
+      amounts[i] = inventory.getResources(TYPES[i]);
+    }
+    this.productionTurns = inventory.getProductionTurns();
+  }
+
+  /** Path of the snapshot a journal starts from. */
+  public static Path basePath(final Path path) {
+    return path.resolveSibling(path.getFileName() + ".base");
+  }
+
+  /**
+   * Starts a journal of a game from its current turn, replacing any previous one. The changes of
+   * the cells and buildings are recorded by the game until the journal is closed.
+   *
+   * @throws IllegalStateException for chunked worlds, which cannot be saved
+   */
+  public static Journal start(final Game game, final Path path, final boolean compressed)
+      throws IOException {
+    Snapshot.save(game, basePath(path));
+    DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeBoolean(compressed);
+    out.writeInt(game.getWorldMap().getTurn());
+    Journal journal = new Journal(game, out, compressed);
+    byte[] units = journal.part(journal::writeUnits);
+    out.writeInt(units.length);
+    out.write(units);
+    out.flush();
+    game.getWorldMap().setRecordingChanges(true);
+    game.getInventory().setRecordingChanges(true);
+    return journal;
+  }
+
+  /** Appends the changes of the turn just played. */
+  public void record(final Game game) throws IOException {
+    byte[] cells = part(part -> writeChanges(part, worldMap.takeChanges()));
+    byte[] state =
+        part(
+            part -> {
+              writeResources(part);
+              writeBuildings(part);
+              writeUnits(part);
+            });
+    out.writeInt(worldMap.getTurn());
+    out.writeInt(cells.length);
+    out.writeInt(state.length);
+    out.write(cells);
+    out.write(state);
+    out.flush();
+  }
+
+  /** Writes a part of a record to a byte array, deflating it if the journal is compressed. */
+  private byte[] part(final PartWriter writer) throws IOException {
+    buffer.reset();
+    if (compressed) {
+      deflater.reset();
+      DataOutputStream part = new DataOutputStream(new DeflaterOutputStream(buffer, deflater));
+      writer.write(part);
+      part.close();
+    } else {
+      writer.write(new DataOutputStream(buffer));
+    }
+    return buffer.toByteArray();
+  }
+
+  /** Writes the changes of a turn, keeping only the last amount of each cell. */
+  private static void writeChanges(final DataOutput out, final int[] changes) throws IOException {
+    // Pack index and order of each change so that a sort keeps the last change of a cell last.
+    long[] sorted = new long[changes.length / 2];
+    for (int i = 0; i < sorted.length; i++) {
+      sorted[i] = (long) changes[2 * i] << 32 | i;
+    }
+    Arrays.sort(sorted);
+    int count = 0;
+    for (int i = 0; i < sorted.length; i++) {
+      if (i + 1 == sorted.length || sorted[i + 1] >>> 32 != sorted[i] >>> 32) {
+        sorted[count++] = sorted[i];
+      }
+    }
+    writeVarInt(out, count);
+    int previous = 0;
+    for (int i = 0; i < count; i++) {
+      int index = (int) (sorted[i] >>> 32);
+      writeVarInt(out, index - previous);
+      writeVarInt(out, changes[2 * (int) sorted[i] + 1]);
+      previous = index;
+    }
+  }
+
+  /** Writes the resources whose amount changed since the last record. */
+  private void writeResources(final DataOutput out) throws IOException {
+    int changed = 0;
+    for (int i = 0; i < TYPES.length; i++) {
+      int amount = inventory.getResources(TYPES[i]);
+      if (amount != amounts[i]) {
+        amounts[i] = amount;
+        changed |= 1 << i;
+      }
+    }
+    writeVarInt(out, changed);
+    for (int i = 0; i < TYPES.length; i++) {
+      if ((changed & 1 << i) != 0) {
+        writeVarInt(out, amounts[i]);
+      }
+    }
+  }
+
+  /**
+   * Writes the number of turns the buildings played since the last record, and the buildings that
+   * produced or were added.
+   */
+  private void writeBuildings(final DataOutput out) throws IOException {
+    writeVarInt(out, inventory.getProductionTurns() - productionTurns);
+    productionTurns = inventory.getProductionTurns();
+    int[] changed = inventory.takeChangedBuildings();
+    List<IBuilding> buildings = inventory.getBuildings();
+    writeVarInt(out, changed.length);
+    int previous = 0;
+    for (int index : changed) {
+      building.reset();
+      buildings.get(index).write(building.data);
+      writeVarInt(out, index - previous);
+      writeVarInt(out, building.size());
+      out.write(building.bytes(), 0, building.size());
+      previous = index;
+    }
+  }
+
+  /** Writes the units that left the map, and those that entered it, moved or changed. */
+  private void writeUnits(final DataOutput out) throws IOException {
+    current.fill(worldMap.getUnits(), worldMap.width());
+    int changed = 0;
+    for (int i = 0; i < current.count; i++) {
+      int sequence = (int) current.sequences[i];
+      int j = sequence < positions.length ? positions[sequence] - 1 : -1;
+      int flags = PLACED | CHANGED;
+      if (j >= 0) {
+        recorded.kept[j] = true;
+        flags = 0;
+        if (current.cells[i] != recorded.cells[j] || current.slots[i] != recorded.slots[j]) {
+          flags |= PLACED;
+        }
+        if (!current.sameState(i, recorded, j)) {
+          flags |= CHANGED;
+        }
+      }
+      current.flags[i] = flags;
+      if (flags != 0) {
+        changed++;
+      }
+    }
+    int left = 0;
+    for (int j = 0; j < recorded.count; j++) {
+      if (!recorded.kept[j]) {
+        left++;
+      }
+    }
+    writeVarInt(out, left);
+    for (int j = 0; j < recorded.count; j++) {
+      if (!recorded.kept[j]) {
+        writeVarInt(out, (int) recorded.sequences[j]);
+      }
+      positions[(int) recorded.sequences[j]] = 0;
+    }
+    writeVarInt(out, changed);
+    for (int i = 0; i < current.count; i++) {
+      int flags = current.flags[i];
+      if (flags == 0) continue;
+      writeVarInt(out, (int) current.sequences[i]);
+      out.writeByte(flags);
+      if ((flags & PLACED) != 0) {
+        writeVarInt(out, current.cells[i]);
+        writeVarInt(out, current.slots[i]);
+      }
+      if ((flags & CHANGED) != 0) {
+        int length = current.offsets[i + 1] - current.offsets[i];
+        writeVarInt(out, length);
+        out.write(current.bytes.bytes(), current.offsets[i], length);
+      }
+    }
+    for (int i = 0; i < current.count; i++) {
+      int sequence = (int) current.sequences[i];
+      if (sequence >= positions.length) {
+        positions = Arrays.copyOf(positions, Math.max(sequence + 1, positions.length * 2));
+      }
+      positions[sequence] = i + 1;
+    }
+    UnitTable before = recorded;
+    recorded = current;
+    current = before;
+  }
+
+  private static void writeVarInt(final DataOutput out, int value) throws IOException {
+    while ((value & ~0x7f) != 0) {
+      out.writeByte(value & 0x7f | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  private static int readVarInt(final DataInput in) throws IOException {
+    int value = 0;
+    for (int shift = 0; ; shift += 7) {
+      int b = in.readUnsignedByte();
+      value |= (b & 0x7f) << shift;
+      if (b < 0x80) return value;
+    }
+  }
+
+  /** Stops recording, and closes the journal. */
+  @Override
+  public void close() throws IOException {
+    worldMap.setRecordingChanges(false);
+    inventory.setRecordingChanges(false);
+    out.close();
+    if (deflater != null) {
+      deflater.end();
+    }
+  }
+
+  /**
+   * Reconstructs a game as it was at the end of a turn recorded in a journal, or at the turn the
+   * journal starts from.
+   */
+  public static Game replay(final Path path, final int turn) throws IOException {
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+      if (in.readInt() != MAGIC) {
+        throw new IOException(path + " is not a journal");
+      }
+      int version = in.readInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported journal version " + version);
+      }
+      boolean compressed = in.readBoolean();
+      int baseTurn = in.readInt();
+      if (turn < baseTurn) {
+        throw new IOException("Journal starts at turn " + baseTurn + ", after turn " + turn);
+      }
+      if (turn == baseTurn) {
+        return Snapshot.load(basePath(path));
+      }
+      Game base = Snapshot.load(basePath(path), false);
+      WorldMap worldMap = base.getWorldMap();
+      Map<Long, Tracked> units = new HashMap<>();
+      applyUnits(part(readBytes(in, in.readInt()), compressed), units);
+      int[] amounts = new int[TYPES.length];
+      for (int i = 0; i < TYPES.length; i++) {
+        amounts[i] = base.getInventory().getResources(TYPES[i]);
+      }
+      // Buildings recorded since the snapshot, and the turns played before each of them was.
+      List<byte[]> buildings = new ArrayList<>(base.getInventory().getBuildings().size());
+      int[] recordedAt = new int[0];
+      int played = 0;
+      while (true) {
+        int recorded;
+        try {
+          recorded = in.readInt();
+        } catch (EOFException e) {
+          throw new IOException("Journal ends before turn " + turn);
+        }
+        int cellsLength = in.readInt();
+        int stateLength = in.readInt();
+        byte[] cells = readBytes(in, cellsLength);
+        byte[] state = readBytes(in, stateLength);
+        DataInputStream changes = part(cells, compressed);
+        for (int count = readVarInt(changes), index = 0; count > 0; count--) {
+          index += readVarInt(changes);
+          int amount = readVarInt(changes);
+          if (index < 0 || index >= worldMap.width() * worldMap.height() || amount < 0) {
+            throw new IOException("Corrupt journal: cell " + index + " changed to " + amount);
+          }
+          try {
+            worldMap.applyChange(index, amount);
+          } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt journal: " + e.getMessage(), e);
+          }
+        }
+        DataInputStream part = part(state, compressed);
+        int changed = readVarInt(part);
+        for (int i = 0; i < TYPES.length; i++) {
+          if ((changed & 1 << i) != 0) {
+            amounts[i] = readVarInt(part);
+          }
+        }
+        played += readVarInt(part);
+        for (int count = readVarInt(part), index = 0; count > 0; count--) {
+          index += readVarInt(part);
+          byte[] bytes = readBytes(part, readVarInt(part));
+          while (buildings.size() <= index) {
+            buildings.add(null);
+          }
+          buildings.set(index, bytes);
+          if (recordedAt.length <= index) {
+            recordedAt = Arrays.copyOf(recordedAt, Math.max(index + 1, recordedAt.length * 2));
+          }
+          recordedAt[index] = played;
+        }
+        applyUnits(part, units);
+        if (recorded < turn) continue;
+        Inventory inventory = new Inventory();
+        for (int i = 0; i < TYPES.length; i++) {
+          inventory.addResources(TYPES[i], amounts[i]);
+        }
+        List<IBuilding> before = base.getInventory().getBuildings();
+        for (int i = 0; i < Math.max(before.size(), buildings.size()); i++) {
+          byte[] bytes = i < buildings.size() ? buildings.get(i) : null;
+          if (bytes == null && i >= before.size()) {
+            throw new IOException("Corrupt journal: building " + i + " was never recorded");
+          }
+          IBuilding building = bytes != null ? IBuilding.read(part(bytes, false)) : before.get(i);
+          ProductionScheduler.catchUp(building, played - (bytes != null ? recordedAt[i] : 0));
+          inventory.addBuilding(building);
+        }
+        worldMap.insertUnits(occupants(units.values(), worldMap.width(), worldMap.height()));
+        worldMap.setTurn(recorded);
+        return new Game(worldMap, inventory, base.getSeed());
+      }
+    }
+  }
+
+  /** Applies the changes of the units of a record, keeping their states without reading them. */
+  private static void applyUnits(final DataInputStream in, final Map<Long, Tracked> units)
+      throws IOException {
+    for (int count = readVarInt(in); count > 0; count--) {
+      units.remove((long) readVarInt(in));
+    }
+    for (int count = readVarInt(in); count > 0; count--) {
+      long sequence = readVarInt(in);
+      int flags = in.readUnsignedByte();
+      Tracked unit = units.computeIfAbsent(sequence, s -> new Tracked());
+      if ((flags & PLACED) != 0) {
+        unit.cell = readVarInt(in);
+        unit.slot = readVarInt(in);
+      }
+      if ((flags & CHANGED) != 0) {
+        unit.state = readBytes(in, readVarInt(in));
+      }
+    }
+  }
+
+  /** Reads the units, and gathers those sharing a cell into their group. */
+  private static List<Unit> occupants(
+      final Collection<Tracked> tracked, final int width, final int height) throws IOException {
+    List<Tracked> sorted = new ArrayList<>(tracked);
+    sorted.sort(Comparator.comparingInt((Tracked unit) -> unit.cell).thenComparingInt(u -> u.slot));
+    List<Unit> occupants = new ArrayList<>(sorted.size());
+    Group group = null;
+    for (Tracked unit : sorted) {
+      if (unit.state == null || unit.cell < 0 || unit.cell >= width * height) {
+        throw new IOException("Corrupt journal: unit at cell " + unit.cell);
+      }
+      int x = unit.cell % width;
+      int y = unit.cell / width;
+      Unit read = Unit.readState(x, y, part(unit.state, false));
+      if (unit.slot == 0) {
+        occupants.add(read);
+        continue;
+      }
+      if (unit.slot == 1) {
+        group = new Group(x, y);
+        occupants.add(group);
+      } else if (group == null || group.getX() != x || group.getY() != y) {
+        throw new IOException("Corrupt journal: group member away from its group, at " + unit.cell);
+      }
+      group.addUnit(read);
+    }
+    return occupants;
+  }
+
+  /** Reads {@code length} bytes, which may be corrupt, without allocating them up front. */
+  private static byte[] readBytes(final DataInputStream in, final int length) throws IOException {
+    if (length < 0) {
+      throw new IOException("Corrupt journal: " + length + " bytes");
+    }
+    byte[] bytes = in.readNBytes(length);
+    if (bytes.length < length) {
+      throw new EOFException("Journal ends within a record");
+    }
+    return bytes;
+  }
+
+  private static DataInputStream part(final byte[] bytes, final boolean compressed) {
+    InputStream in = new ByteArrayInputStream(bytes);
+    return new DataInputStream(compressed ? new InflaterInputStream(in) : in);
+  }
+
+  @FunctionalInterface
+  private interface PartWriter {
+    void write(DataOutputStream out) throws IOException;
+  }
+
+  /** A byte buffer whose content is read in place. */
+  private static final class Bytes extends ByteArrayOutputStream {
+    private final DataOutputStream data = new DataOutputStream(this);
+
+    private byte[] bytes() {
+      return buf;
+    }
+  }
+
+  /** A unit as last recorded, while replaying. */
+  private static final class Tracked {
+    private int cell;
+    /** 0 for a unit standing on its own, and its place in its group plus one for a member. */
+    private int slot;
+
+    private byte[] state;
+  }
+
+  /**
+   * The units of a map, members of groups included, in the order of their cells and of their place
+   * in their group, with their states written one after another.
+   */
+  private static final class UnitTable {
+    private final Bytes bytes = new Bytes();
+    private int count = 0;
+    private long[] sequences = new long[0];
+    private int[] cells = new int[0];
+    /** See {@link Tracked#slot}. */
+    private int[] slots = new int[0];
+    /** Where the state of each unit starts in {@link #bytes}, and where the last one ends. */
+    private int[] offsets = new int[1];
+    /** {@link #PLACED} and {@link #CHANGED} for each unit, while recorded. */
+    private int[] flags = new int[0];
+    /** Whether each unit is still on the map, while the next table is recorded. */
+    private boolean[] kept = new boolean[0];
+
+    private void fill(final Collection<Unit> occupants, final int width) throws IOException {
+      bytes.reset();
+      count = 0;
+      for (Unit occupant : occupants) {
+        int cell = occupant.getY() * width + occupant.getX();
+        if (occupant instanceof Group group) {
+          int slot = 1;
+          for (Unit unit : group.getUnits()) {
+            add(unit, cell, slot++);
+          }
+        } else {
+          add(occupant, cell, 0);
+        }
+      }
+      Arrays.fill(kept, 0, count, false);
+    }
+
+    private void add(final Unit unit, final int cell, final int slot) throws IOException {
+      if (count == sequences.length) {
+        int length = Math.max(16, count * 2);
+        sequences = Arrays.copyOf(sequences, length);
+        cells = Arrays.copyOf(cells, length);
+        slots = Arrays.copyOf(slots, length);
+        offsets = Arrays.copyOf(offsets, length + 1);
+        flags = Arrays.copyOf(flags, length);
+        kept = Arrays.copyOf(kept, length);
+      }
+      sequences[count] = unit.getSequence();
+      cells[count] = cell;
+      slots[count] = slot;
+      offsets[count] = bytes.size();
+      unit.writeState(bytes.data);
+      offsets[++count] = bytes.size();
+    }
+
+    /** Whether the state of a unit is written the same as that of a unit of another table. */
+    private boolean sameState(final int i, final UnitTable other, final int j) {
+      return Arrays.equals(
+          bytes.bytes(),
+          offsets[i],
+          offsets[i + 1],
+          other.bytes.bytes(),
+          other.offsets[j],
+          other.offsets[j + 1]);
+    }
+  }
+}
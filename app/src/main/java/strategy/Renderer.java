@@ -0,0 +1,215 @@
+package strategy;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import strategy.building.IBuilding;
+import strategy.producible.unit.Unit;
+import strategy.world.Cell;
+import strategy.world.Inventory;
+import strategy.world.ResourceType;
+import strategy.world.WorldMap;
+
+/**
+ * <b>Renders the frames of a game.</b>
+ *
+ * <p>A frame is composed in a char buffer kept from one frame to the next, then written out in a
+ * single call. In diff mode, the rows of the map that are the same as in the previous frame are
+ * left out, so that following a game only shows what changed.
+ */
+final class Renderer {
+  private static final ResourceType[] TYPES = ResourceType.values();
+  private static final int SEPARATOR_WIDTH = 80;
+  /** Room for a cell's symbol and amount, with the unit markers around it. */
+  private static final int CELL_WIDTH =
+      String.valueOf(Arrays.stream(TYPES).mapToInt(ResourceType::getMaxVeinSize).max().orElse(0))
+              .length()
+          + 3;
+
+  private char[] buffer = new char[1 << 12];
+  private int length;
+  private final Queue<Unit> units = new ArrayDeque<>();
+
+  private boolean diff = false;
+  /** The rows of the previous frame, in diff mode. */
+  private char[][] previousRows;
+
+  private PrintStream stream;
+  private Writer writer;
+
+  boolean isDiff() {
+    return diff;
+  }
+
+  /** Sets whether to leave out the rows that did not change since the previous frame. */
+  void setDiff(final boolean diff) {
+    this.diff = diff;
+    previousRows = null;
+  }
+
+  void render(final Game game, final PrintStream out) {
+    WorldMap worldMap = game.getWorldMap();
+    Inventory inventory = game.getInventory();
+    length = 0;
+    separator();
+    append("Inventory: ");
+    for (int i = 0; i < TYPES.length; i++) {
+      if (i > 0) append(", ");
+      append(TYPES[i].toString()).append(": ").append(inventory.getResources(TYPES[i]));
+    }
+    append('\n');
+    append("Remaining: ");
+    for (int i = 0; i < TYPES.length; i++) {
+      if (i > 0) append(", ");
+      append(TYPES[i].toString()).append(": ").append(worldMap.getRemainingResources(TYPES[i]));
+    }
+    append(" | Units able to mine: ").append(worldMap.getMiningUnitCount()).append('\n');
+    separator();
+    inventory.syncBuildings();
+    List<IBuilding> buildings = inventory.getBuildings();
+    if (!buildings.isEmpty()) {
+      append("Buildings:\n");
+      buildings.forEach(building -> append(building.toString()).append('\n'));
+      separator();
+    }
+
+    int labelWidth = digits(worldMap.height()) + 1;
+    pad(length, labelWidth + 1);
+    for (int column = 0; column < worldMap.width(); column++) {
+      int start = length;
+      append(column);
+      pad(start, CELL_WIDTH + 1);
+    }
+    append("| Units:\n");
+    if (previousRows == null || previousRows.length != worldMap.height()) {
+      previousRows = new char[worldMap.height()][];
+    }
+    for (int row = 0; row < worldMap.height(); row++) {
+      int start = length;
+      row(worldMap, row, labelWidth);
+      if (diff) {
+        char[] previous = previousRows[row];
+        if (previous != null && Arrays.equals(buffer, start, length, previous, 0, previous.length)) {
+          length = start;
+        } else {
+          previousRows[row] = Arrays.copyOfRange(buffer, start, length);
+        }
+      }
+    }
+    separator();
+    write(out);
+  }
+
+  private void row(final WorldMap worldMap, final int row, final int labelWidth) {
+    int start = length;
+    append(row);
+    pad(start, labelWidth);
+    for (int column = 0; column < worldMap.width(); column++) {
+      Cell cell = worldMap.getCell(column, row);
+      Unit unit = cell.getUnit();
+      start = length;
+      if (unit != null) {
+        units.add(unit);
+        append(unit.hasPlayed() ? '{' : unit.canMine() ? '[' : '(');
+      } else {
+        append(' ');
+      }
+      int amount = cell.getAmount();
+      if (amount > 0) {
+        append(cell.getType().getSymbol()).append(amount);
+      }
+      pad(start, CELL_WIDTH);
+      if (unit != null) {
+        append(unit.hasPlayed() ? '}' : unit.canMine() ? ']' : ')');
+      } else {
+        append(' ');
+      }
+    }
+    append(" | ");
+    while (!units.isEmpty()) {
+      append(units.remove().toString()).append(' ');
+    }
+    append('\n');
+  }
+
+  private void separator() {
+    int start = length;
+    pad(start, SEPARATOR_WIDTH);
+    Arrays.fill(buffer, start, length, '-');
+    append('\n');
+  }
+
+  private static int digits(final int value) {
+    int digits = 1;
+    for (int rest = value / 10; rest > 0; rest /= 10) {
+      digits++;
+    }
+    return digits;
+  }
+
+  private void ensureCapacity(final int extra) {
+    if (length + extra > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+    }
+  }
+
+  private Renderer append(final char c) {
+    ensureCapacity(1);
+    buffer[length++] = c;
+    return this;
+  }
+
+  private Renderer append(final String string) {
+    ensureCapacity(string.length());
+    string.getChars(0, string.length(), buffer, length);
+    length += string.length();
+    return this;
+  }
+
+  /** Appends a number without going through a string. */
+  private Renderer append(final long value) {
+    if (value < 0) {
+      return append(Long.toString(value));
+    }
+    int digits = 1;
+    for (long rest = value / 10; rest > 0; rest /= 10) {
+      digits++;
+    }
+    ensureCapacity(digits);
+    long rest = value;
+    for (int i = length + digits - 1; i >= length; i--) {
+      buffer[i] = (char) ('0' + rest % 10);
+      rest /= 10;
+    }
+    length += digits;
+    return this;
+  }
+
+  /** Pads with spaces what was appended since {@code start} up to {@code width} chars. */
+  private void pad(final int start, final int width) {
+    int missing = start + width - length;
+    if (missing <= 0) return;
+    ensureCapacity(missing);
+    Arrays.fill(buffer, length, length + missing, ' ');
+    length += missing;
+  }
+
+  private void write(final PrintStream out) {
+    if (out != stream) {
+      stream = out;
+      writer = new OutputStreamWriter(out);
+    }
+    try {
+      writer.write(buffer, 0, length);
+      writer.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,200 @@
+package strategy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import strategy.producible.Tool;
+import strategy.producible.unit.Group;
+import strategy.producible.unit.Unit;
+import strategy.producible.unit.modifier.UnitModifier;
+import strategy.world.Inventory;
+import strategy.world.MappedFile;
+import strategy.world.ResourceType;
+import strategy.world.ScenarioWorld;
+import strategy.world.WorldMap;
+
+/**
+ * <b>Loads pre-authored worlds from binary scenarios, and writes games as scenarios.</b>
+ *
+ * <p>Unlike a {@link Snapshot}, a scenario holds the start of a game rather than a game being
+ * played: the contents of each cell, the starting units and the starting resources. It starts with
+ * {@link #MAGIC}, the {@link #VERSION} of the format and the length of its setup, then the setup:
+ *
+ * <ol>
+ *   <li>the number of resource types, then the starting amount of each, by ordinal;
+ *   <li>the number of units, then for each its position, the efficiency of its tool and the
+ *       bitmask of its targets (see {@link ResourceType#mask(List)}, 0 for no tool), and the
+ *       modifiers it can gain, as indexes in {@link Config#UNIT_MODIFIERS}.
+ * </ol>
+ *
+ * <p>The world follows from the next multiple of 8, as laid out by {@link ScenarioWorld}. A
+ * scenario is read through a memory mapping and decoded straight into the storage of the world,
+ * so large worlds load in one pass over the file.
+ */
+public final class Scenario {
+  /** "STSC" in ASCII. */
+  static final int MAGIC = 0x43535453;
+
+  static final int VERSION = 1;
+  private static final int HEADER_SIZE = 12;
+
+  private Scenario() {}
+
+  /** Writes the world, units and resources of a game to a scenario file, replacing any other. */
+  public static void write(final Game game, final Path path) throws IOException {
+    byte[] setup = setup(game);
+    ScenarioWorld world = ScenarioWorld.encode(game.getWorldMap());
+    Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+    long worldOffset = MappedFile.align(HEADER_SIZE + setup.length);
+    try (MappedFile file = MappedFile.create(temporary, worldOffset + world.size())) {
+      file.putInt(0, MAGIC);
+      file.putInt(4, VERSION);
+      file.putInt(8, setup.length);
+      file.putBytes(HEADER_SIZE, setup, 0, setup.length);
+      world.write(file, worldOffset);
+      file.force();
+    }
+    Files.move(
+        temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static byte[] setup(final Game game) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      ResourceType[] types = ResourceType.values();
+      out.writeByte(types.length);
+      for (ResourceType type : types) {
+        out.writeInt(game.getInventory().getResources(type));
+      }
+      List<Unit> units = new ArrayList<>();
+      for (Unit unit : game.getWorldMap().getUnits()) {
+        if (unit instanceof Group group) {
+          units.addAll(group.getUnits());
+        } else {
+          units.add(unit);
+        }
+      }
+      out.writeInt(units.size());
+      for (Unit unit : units) {
+        out.writeInt(unit.getX());
+        out.writeInt(unit.getY());
+        Tool tool = unit.getTool();
+        out.writeInt(tool == null ? 0 : tool.efficiency());
+        out.writeByte(tool == null ? 0 : tool.mask());
+        out.writeByte(unit.getModifiers().size());
+        for (UnitModifier modifier : unit.getModifiers()) {
+          int index = Config.UNIT_MODIFIERS.indexOf(modifier.getClass());
+          if (index < 0) {
+            throw new IOException(
+                "Unit modifier " + modifier.getClass().getName() + " is not known");
+          }
+          out.writeByte(index);
+        }
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Loads a game from a scenario file.
+   *
+   * @param layout how the cells of the world are stored; scenarios cannot be loaded into {@link
+   *     WorldMap.Layout#CHUNKED} worlds, which are always generated
+   * @param seed seed of the game, for what happens once it is played
+   */
+  public static Game load(final Path path, final WorldMap.Layout layout, final long seed)
+      throws IOException {
+    try (MappedFile file = MappedFile.open(path)) {
+      if (file.size() < HEADER_SIZE || file.getInt(0) != MAGIC) {
+        throw new IOException(path + " is not a scenario");
+      }
+      int version = file.getInt(4);
+      if (version != VERSION) {
+        throw new IOException("Unsupported scenario version " + version);
+      }
+      int setupLength = file.getInt(8);
+      if (setupLength < 0 || HEADER_SIZE + (long) setupLength > file.size()) {
+        throw new IOException("Corrupt scenario: setup of " + setupLength + " bytes");
+      }
+      byte[] setup = new byte[setupLength];
+      file.getBytes(HEADER_SIZE, setup, 0, setup.length);
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(setup));
+      Inventory inventory = new Inventory();
+      ResourceType[] types = ResourceType.values();
+      int typeCount = in.readUnsignedByte();
+      if (typeCount > types.length) {
+        throw new IOException("Corrupt scenario: " + typeCount + " resource types");
+      }
+      for (int i = 0; i < typeCount; i++) {
+        int amount = in.readInt();
+        if (amount < 0) {
+          throw new IOException("Corrupt scenario: " + amount + " " + types[i]);
+        }
+        if (amount > 0) {
+          inventory.addResources(types[i], amount);
+        }
+      }
+      List<Unit> units = readUnits(in);
+      WorldMap worldMap =
+          ScenarioWorld.read(
+              file, MappedFile.align(HEADER_SIZE + setup.length), layout, Game.worldSeed(seed));
+      for (Unit unit : units) {
+        if (unit.getX() < 0
+            || unit.getX() >= worldMap.width()
+            || unit.getY() < 0
+            || unit.getY() >= worldMap.height()) {
+          throw new IOException(
+              "Unit at (" + unit.getX() + ", " + unit.getY() + ") is outside the world");
+        }
+      }
+      worldMap.insertUnits(units);
+      return new Game(worldMap, inventory, seed);
+    }
+  }
+
+  private static List<Unit> readUnits(final DataInputStream in) throws IOException {
+    int count = in.readInt();
+    if (count < 0) {
+      throw new IOException("Corrupt scenario: " + count + " units");
+    }
+    List<Unit> units = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      int x = in.readInt();
+      int y = in.readInt();
+      int efficiency = in.readInt();
+      int mask = in.readUnsignedByte();
+      if (mask >= 1 << ResourceType.values().length) {
+        throw new IOException("Invalid tool targets " + mask);
+      }
+      if (mask != 0 ? efficiency < Config.TOOL_BASE_EFFICIENCY : efficiency != 0) {
+        throw new IOException("Invalid tool efficiency " + efficiency);
+      }
+      List<UnitModifier> modifiers = new ArrayList<>();
+      int modifierCount = in.readUnsignedByte();
+      for (int j = 0; j < modifierCount; j++) {
+        int index = in.readUnsignedByte();
+        if (index >= Config.UNIT_MODIFIERS.size()) {
+          throw new IOException("Unknown unit modifier " + index);
+        }
+        try {
+          modifiers.add(Config.UNIT_MODIFIERS.get(index).getDeclaredConstructor().newInstance());
+        } catch (ReflectiveOperationException e) {
+          throw new IOException("Could not create unit modifier " + index, e);
+        }
+      }
+      Unit unit = new Unit(x, y, modifiers);
+      if (mask != 0) {
+        unit.setTool(Tool.of(efficiency, mask));
+      }
+      units.add(unit);
+    }
+    return units;
+  }
+}
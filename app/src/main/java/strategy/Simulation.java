@@ -0,0 +1,365 @@
+package strategy;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import strategy.metrics.TurnMetrics;
+import strategy.world.Inventory;
+import strategy.world.ResourceType;
+import strategy.world.WorldMap;
+
+/**
+ * <b>Headless batch runner for the game.</b>
+ *
+ * <p>Drives {@link Game#step()} in a tight loop without any terminal interaction, and reports how
+ * long each turn took. The simulation stops early if the game is won or lost.
+ *
+ * <p>Options (all optional):
+ *
+ * <ul>
+ *   <li>{@code --width <n>}, {@code --height <n>}: size of the generated world
+ *   <li>{@code --turns <n>}: maximum number of turns to play
+ *   <li>{@code --seed <n>}: seed of the game, to replay a run; a random one is printed otherwise
+ *   <li>{@code --interval <n>}: print a progress line every {@code n} turns (0 to disable)
+ *   <li>{@code --units <n>}: starting units per job
+ *   <li>{@code --food <n>}: starting food, to keep large populations fed
+ *   <li>{@code --layout <object|flat|chunked>}: how the world's cells are stored, see {@link
+ *       WorldMap.Layout}
+ *   <li>{@code --fields}: share distance fields between units with the same targets, see {@link
+ *       WorldMap#setDistanceFields(boolean)}
+ *   <li>{@code --threads <n>}: threads looking up unit targets each turn, see {@link
+ *       WorldMap#setParallelism(int)}
+ *   <li>{@code --load <file>}: resume the game saved in a snapshot, instead of generating one
+ *   <li>{@code --save <file>}: save the game to a snapshot in the background at each progress
+ *       line, and once more at the end, see {@link Snapshot}
+ *   <li>{@code --journal <file>}: record the changes of each turn to a journal, see {@link Journal}
+ *   <li>{@code --compress}: deflate the records of the journal
+ *   <li>{@code --replay <n>}: resume the game at turn {@code n} of the journal, instead of
+ *       recording one
+ *   <li>{@code --metrics}: time each phase of the turns and report their latencies at the end, see
+ *       {@link TurnMetrics}
+ *   <li>{@code --scenario <file>}: start from the world, units and resources of a scenario, instead
+ *       of generating them, see {@link Scenario}
+ *   <li>{@code --export <file>}: write the starting world, units and resources to a scenario
+ * </ul>
+ *
+ * <p>The heap used by the generated game is reported alongside the turn timings, so that layouts
+ * can be compared on both memory and throughput.
+ */
+public class Simulation {
+  private int width = Config.WIDTH;
+  private int height = Config.HEIGHT;
+  private int turns = Config.HEADLESS_DEFAULT_TURNS;
+  private int interval = Config.HEADLESS_DEFAULT_INTERVAL;
+  private int unitsPerJob = 1;
+  private int food = Config.INITIAL_FOOD_AMOUNT;
+  private Long seed = null;
+  private WorldMap.Layout layout = WorldMap.Layout.OBJECT;
+  private boolean distanceFields = false;
+  private int threads = 1;
+  private Path load = null;
+  private Path save = null;
+  private Path journal = null;
+  private boolean compress = false;
+  private Integer replay = null;
+  private boolean metrics = false;
+  private Path scenario = null;
+  private Path export = null;
+
+  public static void main(String[] args) {
+    Simulation simulation = new Simulation();
+    try {
+      simulation.parse(args);
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      usage();
+      System.exit(1);
+      return;
+    }
+    try {
+      simulation.run();
+    } catch (IOException | UncheckedIOException e) {
+      System.err.println("Snapshot, journal or scenario failed: " + e.getMessage());
+      System.exit(1);
+    }
+  }
+
+  private static void usage() {
+    System.err.print(
+        """
+        Usage: --headless [options]
+          --width <n>       Width of the world (default %d)
+          --height <n>      Height of the world (default %d)
+          --turns <n>       Maximum number of turns to play (default %d)
+          --seed <n>        Seed of the game (default: random, printed)
+          --interval <n>    Print progress every n turns, 0 to disable (default %d)
+          --units <n>       Starting units per job (default 1)
+          --food <n>        Starting food (default %d)
+          --layout <name>   Cell storage: object, flat or chunked (default object)
+          --fields          Share distance fields between units with the same targets
+          --threads <n>     Threads looking up unit targets each turn (default 1)
+          --load <file>     Resume the game saved in a snapshot
+          --save <file>     Save the game to a snapshot at each progress line and at the end
+          --journal <file>  Record the changes of each turn to a journal
+          --compress        Deflate the records of the journal
+          --replay <n>      Resume the game at turn n of the journal instead of recording one
+          --metrics         Report the latencies of each phase of the turns
+          --scenario <file> Start from the world, units and resources of a scenario
+          --export <file>   Write the starting world, units and resources to a scenario
+        """
+            .formatted(
+                Config.WIDTH,
+                Config.HEIGHT,
+                Config.HEADLESS_DEFAULT_TURNS,
+                Config.HEADLESS_DEFAULT_INTERVAL,
+                Config.INITIAL_FOOD_AMOUNT));
+  }
+
+  private void parse(final String[] args) {
+    for (int i = 0; i < args.length; i++) {
+      String flag = args[i];
+      if (flag.equals("--headless")) continue;
+      if (flag.equals("--fields")) {
+        distanceFields = true;
+        continue;
+      }
+      if (flag.equals("--compress")) {
+        compress = true;
+        continue;
+      }
+      if (flag.equals("--metrics")) {
+        metrics = true;
+        continue;
+      }
+      if (i + 1 >= args.length) {
+        throw new IllegalArgumentException("Missing value for " + flag);
+      }
+      String value = args[++i];
+      try {
+        switch (flag) {
+          case "--width" -> width = positive(flag, Integer.parseInt(value));
+          case "--height" -> height = positive(flag, Integer.parseInt(value));
+          case "--turns" -> turns = positive(flag, Integer.parseInt(value));
+          case "--interval" -> interval = Math.max(Integer.parseInt(value), 0);
+          case "--units" -> unitsPerJob = positive(flag, Integer.parseInt(value));
+          case "--food" -> food = Math.max(Integer.parseInt(value), 0);
+          case "--seed" -> seed = Long.parseLong(value);
+          case "--layout" -> layout = layout(value);
+          case "--threads" -> threads = positive(flag, Integer.parseInt(value));
+          case "--load" -> load = Path.of(value);
+          case "--save" -> save = Path.of(value);
+          case "--journal" -> journal = Path.of(value);
+          case "--replay" -> replay = Math.max(Integer.parseInt(value), 0);
+          case "--scenario" -> scenario = Path.of(value);
+          case "--export" -> export = Path.of(value);
+          default -> throw new IllegalArgumentException("Unknown option " + flag);
+        }
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Invalid value for " + flag + ": " + value);
+      }
+    }
+    if (replay != null && journal == null) {
+      throw new IllegalArgumentException("--replay needs a --journal");
+    }
+    if (scenario != null && (load != null || replay != null)) {
+      throw new IllegalArgumentException("--scenario cannot be combined with --load or --replay");
+    }
+    if (scenario != null && layout == WorldMap.Layout.CHUNKED) {
+      throw new IllegalArgumentException("Scenarios cannot be loaded into a chunked world");
+    }
+    boolean saving = save != null || (journal != null && replay == null);
+    if (saving && layout == WorldMap.Layout.CHUNKED && load == null) {
+      throw new IllegalArgumentException("Chunked worlds cannot be saved or recorded to a journal");
+    }
+  }
+
+  private static WorldMap.Layout layout(final String value) {
+    try {
+      return WorldMap.Layout.valueOf(value.toUpperCase());
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Unknown layout " + value);
+    }
+  }
+
+  private static int positive(final String flag, final int value) {
+    if (value <= 0) {
+      throw new IllegalArgumentException(flag + " must be positive");
+    }
+    return value;
+  }
+
+  public void run() throws IOException {
+    long memoryBefore = usedMemory();
+    long setupStart = System.nanoTime();
+    Game game;
+    if (load != null || replay != null) {
+      game = replay != null ? Journal.replay(journal, replay) : Snapshot.load(load);
+      WorldMap worldMap = game.getWorldMap();
+      System.out.printf(
+          "Resuming %dx%d %s world from %s at turn %d, up to %d more turns, %d thread(s), seed"
+              + " %d\n",
+          worldMap.width(),
+          worldMap.height(),
+          worldMap.getLayout().name().toLowerCase(),
+          replay != null ? journal : load,
+          worldMap.getTurn(),
+          turns,
+          threads,
+          game.getSeed());
+    } else if (scenario != null) {
+      long seed = this.seed != null ? this.seed : Utils.newSeed();
+      game = Scenario.load(scenario, layout, seed);
+      WorldMap worldMap = game.getWorldMap();
+      System.out.printf(
+          "Starting %dx%d %s world from %s, %d unit(s), up to %d turns, %d thread(s), seed %d\n",
+          worldMap.width(),
+          worldMap.height(),
+          layout.name().toLowerCase(),
+          scenario,
+          worldMap.getUnitCount(),
+          turns,
+          threads,
+          seed);
+    } else {
+      long seed = this.seed != null ? this.seed : Utils.newSeed();
+      System.out.printf(
+          "Simulating %dx%d %s world, %d unit(s) per job, up to %d turns, %d thread(s), seed %d\n",
+          width,
+          height,
+          layout.name().toLowerCase(),
+          unitsPerJob,
+          turns,
+          threads,
+          seed);
+      game = new Game(width, height, unitsPerJob, layout, seed);
+      Inventory inventory = game.getInventory();
+      inventory.removeResources(ResourceType.FOOD, inventory.getResources(ResourceType.FOOD));
+      inventory.addResources(ResourceType.FOOD, food);
+    }
+    game.getWorldMap().setDistanceFields(distanceFields);
+    game.getWorldMap().setParallelism(threads);
+    long setupTime = System.nanoTime() - setupStart;
+    System.out.printf(
+        "Setup: %.3f ms (world generation or loading %.3f ms), heap used by game: %.1f MiB\n",
+        setupTime / 1e6,
+        game.getWorldMap().getGenerationTime() / 1e6,
+        (usedMemory() - memoryBefore) / (1024.0 * 1024.0));
+    try (game) {
+      play(game, memoryBefore);
+    }
+  }
+
+  /** Plays the game set up by {@link #run()}, recording and saving it as asked. */
+  private void play(final Game game, final long memoryBefore) throws IOException {
+    if (export != null) {
+      long start = System.nanoTime();
+      Scenario.write(game, export);
+      System.out.printf(
+          "Scenario written to %s in %.3f ms (%.1f MiB)\n",
+          export, (System.nanoTime() - start) / 1e6, Files.size(export) / (1024.0 * 1024.0));
+    }
+
+    Journal recording = null;
+    if (journal != null && replay == null) {
+      recording = Journal.start(game, journal, compress);
+    }
+
+    TurnMetrics.enable(metrics || TurnMetrics.isOn());
+    long[] turnTimes = new long[turns];
+    long intervalStart = System.nanoTime();
+    int played = 0;
+    Game.Status status = Game.Status.RUNNING;
+    CompletableFuture<Void> saving = CompletableFuture.completedFuture(null);
+    while (played < turns && status == Game.Status.RUNNING) {
+      long start = System.nanoTime();
+      status = game.step();
+      if (recording != null) {
+        recording.record(game);
+      }
+      turnTimes[played++] = System.nanoTime() - start;
+      if (interval > 0 && played % interval == 0) {
+        long now = System.nanoTime();
+        System.out.printf(
+            "turn %d: %s, %d unit(s), %d able to mine, %d resources left, %.1f turns/s,"
+                + " inventory: %s\n",
+            played,
+            status,
+            game.getWorldMap().getUnitCount(),
+            game.getWorldMap().getMiningUnitCount(),
+            game.getWorldMap().getRemainingResources(),
+            interval / ((now - intervalStart) / 1e9),
+            inventory(game));
+        if (save != null) {
+          saving = Snapshot.saveInBackground(game, save);
+          System.out.printf(
+              "Checkpoint: state copied in %.3f ms, writing in the background\n",
+              (System.nanoTime() - now) / 1e6);
+        }
+        intervalStart = System.nanoTime();
+      }
+    }
+    report(status, Arrays.copyOf(turnTimes, played));
+    if (TurnMetrics.isOn()) {
+      System.out.print(TurnMetrics.report());
+    }
+    if (recording != null) {
+      recording.close();
+      System.out.printf(
+          "Journal written to %s (%.1f KiB, base snapshot %.1f MiB)\n",
+          journal,
+          Files.size(journal) / 1024.0,
+          Files.size(Journal.basePath(journal)) / (1024.0 * 1024.0));
+    }
+    if (save != null) {
+      saving.join();
+      long start = System.nanoTime();
+      Snapshot.save(game, save);
+      System.out.printf(
+          "Saved to %s in %.3f ms (%.1f MiB)\n",
+          save, (System.nanoTime() - start) / 1e6, Files.size(save) / (1024.0 * 1024.0));
+    }
+    System.out.printf(
+        "Heap used by game after the run: %.1f MiB\n",
+        (usedMemory() - memoryBefore) / (1024.0 * 1024.0));
+  }
+
+  /** Heap in use after asking for a full collection, so that successive readings are comparable. */
+  private static long usedMemory() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static String inventory(final Game game) {
+    return Arrays.stream(ResourceType.values())
+        .map(type -> type + "=" + game.getInventory().getResources(type))
+        .collect(Collectors.joining(" "));
+  }
+
+  private static void report(final Game.Status status, final long[] turnTimes) {
+    long total = Arrays.stream(turnTimes).sum();
+    long[] sorted = turnTimes.clone();
+    Arrays.sort(sorted);
+    System.out.printf("Finished after %d turn(s): %s\n", turnTimes.length, status);
+    if (turnTimes.length == 0) return;
+    System.out.printf("Wall time: %.3f ms\n", total / 1e6);
+    System.out.printf("Throughput: %.1f turns/s\n", turnTimes.length / (total / 1e9));
+    System.out.printf(
+        "Per turn: mean %.3f ms, min %.3f ms, p50 %.3f ms, p99 %.3f ms, max %.3f ms\n",
+        total / 1e6 / turnTimes.length,
+        sorted[0] / 1e6,
+        percentile(sorted, 0.5) / 1e6,
+        percentile(sorted, 0.99) / 1e6,
+        sorted[sorted.length - 1] / 1e6);
+  }
+
+  private static long percentile(final long[] sorted, final double percentile) {
+    return sorted[Math.min((int) (sorted.length * percentile), sorted.length - 1)];
+  }
+}
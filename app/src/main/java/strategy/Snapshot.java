@@ -0,0 +1,142 @@
+package strategy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import strategy.world.Inventory;
+import strategy.world.MappedFile;
+import strategy.world.WorldMap;
+import strategy.world.WorldSnapshot;
+
+/**
+ * <b>Saves games to binary snapshots, and loads them back.</b>
+ *
+ * <p>A snapshot starts with {@link #MAGIC}, the {@link #VERSION} of the format, the seed of the
+ * game, then the length of the inventory followed by the inventory and its buildings. The world
+ * follows from the next multiple of 8, as laid out by {@link WorldSnapshot}. Files are written and
+ * read through memory mappings, so that large worlds are copied in bulk.
+ *
+ * <p>Saving first copies the state that changes as the game is played, which is quick, then writes
+ * the copy, which may happen in the background while the game goes on. A snapshot is written to a
+ * temporary file that replaces the previous one once complete, so that a crash while saving leaves
+ * the previous snapshot intact.
+ */
+public final class Snapshot {
+  /** "STRG" in ASCII. */
+  static final int MAGIC = 0x47525453;
+
+  static final int VERSION = 3;
+  private static final int HEADER_SIZE = 20;
+
+  /** Writes snapshots in the background, one at a time and in order. */
+  private static final ExecutorService WRITER =
+      Executors.newSingleThreadExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "snapshot-writer");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private final long seed;
+  private final byte[] inventory;
+  private final WorldSnapshot world;
+
+  private Snapshot(final Game game) {
+    seed = game.getSeed();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      game.getInventory().write(out);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    inventory = bytes.toByteArray();
+    world = game.getWorldMap().capture();
+  }
+
+  /**
+   * Copies the state of a game, to be written to a snapshot. The game must not be played while its
+   * state is being copied.
+   */
+  public static Snapshot capture(final Game game) {
+    return new Snapshot(game);
+  }
+
+  /** Writes the copied state to a snapshot file, replacing any previous one. */
+  public void write(final Path path) throws IOException {
+    Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+    long worldOffset = MappedFile.align(HEADER_SIZE + inventory.length);
+    try (MappedFile file =
+        MappedFile.create(temporary, worldOffset + world.size(worldOffset))) {
+      file.putInt(0, MAGIC);
+      file.putInt(4, VERSION);
+      file.putLong(8, seed);
+      file.putInt(16, inventory.length);
+      file.putBytes(HEADER_SIZE, inventory, 0, inventory.length);
+      world.write(file, worldOffset);
+      file.force();
+    }
+    Files.move(
+        temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /** Saves a game to a snapshot file. */
+  public static void save(final Game game, final Path path) throws IOException {
+    capture(game).write(path);
+  }
+
+  /**
+   * Saves a game to a snapshot file in the background. Its state is copied before returning, so
+   * the game may be played on while the snapshot is written.
+   */
+  public static CompletableFuture<Void> saveInBackground(final Game game, final Path path) {
+    Snapshot snapshot = capture(game);
+    return CompletableFuture.runAsync(
+        () -> {
+          try {
+            snapshot.write(path);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        },
+        WRITER);
+  }
+
+  /** Loads a game from a snapshot file. */
+  public static Game load(final Path path) throws IOException {
+    return load(path, true);
+  }
+
+  /** Loads a game from a snapshot file, leaving its units out if {@code withUnits} is false. */
+  static Game load(final Path path, final boolean withUnits) throws IOException {
+    try (MappedFile file = MappedFile.open(path)) {
+      if (file.size() < HEADER_SIZE || file.getInt(0) != MAGIC) {
+        throw new IOException(path + " is not a snapshot");
+      }
+      int version = file.getInt(4);
+      if (version != VERSION) {
+        throw new IOException("Unsupported snapshot version " + version);
+      }
+      long seed = file.getLong(8);
+      int inventoryLength = file.getInt(16);
+      if (inventoryLength < 0 || HEADER_SIZE + (long) inventoryLength > file.size()) {
+        throw new IOException("Corrupt snapshot: inventory of " + inventoryLength + " bytes");
+      }
+      byte[] inventory = new byte[inventoryLength];
+      file.getBytes(HEADER_SIZE, inventory, 0, inventory.length);
+      Inventory restored =
+          Inventory.read(new DataInputStream(new ByteArrayInputStream(inventory)));
+      WorldMap worldMap =
+          WorldSnapshot.read(file, MappedFile.align(HEADER_SIZE + inventory.length), withUnits);
+      return new Game(worldMap, restored, seed);
+    }
+  }
+}
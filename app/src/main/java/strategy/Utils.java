@@ -1,7 +1,37 @@
 package strategy;
 
+import java.util.SplittableRandom;
+
 public class Utils {
   public static int clamp(int value, int min, int max) {
     return Math.min(Math.max(value, min), max);
   }
+
+  /** Picks a seed for a game that was not given one. */
+  public static long newSeed() {
+    return new SplittableRandom().nextLong();
+  }
+
+  /**
+   * Derives the seed of an independent random stream from a parent seed.
+   *
+   * <p>Streams are identified by a key rather than split off in sequence, so each part of the game
+   * (a row of the world, a building...) draws the same numbers whatever the order, or the thread,
+   * in which the parts are created.
+   */
+  public static long seed(final long seed, final long key) {
+    return mix64(seed + mix64(key + 0x9e3779b97f4a7c15L));
+  }
+
+  /** Gets the random stream identified by {@code key} under a parent seed. */
+  public static SplittableRandom random(final long seed, final long key) {
+    return new SplittableRandom(seed(seed, key));
+  }
+
+  /** Stafford's variant 13 of the 64-bit MurmurHash3 finalizer, as used by SplittableRandom. */
+  private static long mix64(long z) {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
 }
@@ -1,23 +1,82 @@
 package strategy.building;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Map;
 import strategy.Config;
 import strategy.world.Inventory;
 import strategy.world.ResourceType;
 import strategy.world.WorldMap;
 
-import java.util.Map;
-
 public interface IBuilding {
   static Map<ResourceType, Integer> getCost() {
     return Config.BUILDING_COST;
   }
 
-  /** Produces a resource with the given {@link WorldMap} and {@link Inventory}. */
+  /**
+   * Plays a turn of the building: it waits while its production time runs out, then tries to
+   * produce with the given {@link WorldMap} and {@link Inventory}.
+   */
   void produce(final WorldMap worldMap, final Inventory inventory);
 
+  /** Turns the building waits before it tries to produce again. */
+  int getProductionTime();
+
+  /**
+   * Lets turns pass while the building waits, as as many calls to {@link #produce(WorldMap,
+   * Inventory)} would; at most {@link #getProductionTime()}.
+   */
+  void idle(final int turns);
+
+  /**
+   * The resource the building lacked on its last attempt to produce, or null if it did not lack
+   * any. Its next attempts fail the same way until that resource is added to the inventory, see
+   * {@link ProductionScheduler}.
+   */
+  ResourceType getShortage();
+
+  /**
+   * Whether an attempt also depends on the units of the map, so that a building lacking a resource
+   * may produce again once the units it would serve change.
+   */
+  default boolean dependsOnUnits() {
+    return false;
+  }
+
+  /**
+   * Plays a turn on which the building tries to produce and fails the same way as on its last
+   * attempt, without looking at the map or the inventory.
+   */
+  void failAgain();
+
+  /** Writes the building's state to a snapshot, starting with its kind. */
+  void write(final DataOutput out) throws IOException;
+
+  /** Reads a building written by {@link #write(DataOutput)}. */
+  static IBuilding read(final DataInput in) throws IOException {
+    byte kind = in.readByte();
+    return switch (kind) {
+      case UnitBuilding.KIND -> UnitBuilding.read(in);
+      case ToolBuilding.KIND -> ToolBuilding.read(in);
+      default -> throw new IOException("Unknown building kind " + kind);
+    };
+  }
+
   enum BuildingStatus {
     PRODUCED,
     NOT_ENOUGH_RESOURCES,
-    IN_PROGRESS
+    IN_PROGRESS;
+
+    private static final BuildingStatus[] STATUSES = values();
+
+    /** Reads a status written as its ordinal. */
+    static BuildingStatus read(final DataInput in) throws IOException {
+      int ordinal = in.readUnsignedByte();
+      if (ordinal >= STATUSES.length) {
+        throw new IOException("Corrupt building status " + ordinal);
+      }
+      return STATUSES[ordinal];
+    }
   }
 }
@@ -0,0 +1,293 @@
+package strategy.building;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import strategy.metrics.TurnMetrics;
+import strategy.metrics.TurnMetrics.Phase;
+import strategy.world.Inventory;
+import strategy.world.ResourceType;
+import strategy.world.WorldMap;
+
+/**
+ * <b>Hashed timing wheel waking buildings on the turns they try to produce.</b>
+ *
+ * <p>A building spends most turns waiting for its production time to run out. Rather than telling
+ * every building that a turn passed, the wheel files each building under the turn it will next try
+ * to produce, and only wakes the buildings due on the current turn. A woken building first catches
+ * up on the turns it waited through (see {@link IBuilding#idle(int)}), then produces.
+ *
+ * <p>A building that lacked a resource (see {@link IBuilding#getShortage()}) would fail the same
+ * way on each of its next attempts, until that resource is added to the inventory. Rather than
+ * filed, it is parked on the waiting list of the resource, which the inventory drains when it adds
+ * some (see {@link #restocked(ResourceType)}). Buildings whose attempts depend on the units of the
+ * map also wait for the units a tool factory may equip to change, see {@link
+ * IBuilding#dependsOnUnits()}. A parked building costs nothing: the attempts it missed are played
+ * as repeats of its last one when it is caught up (see {@link #catchUp(IBuilding, int)}), and it
+ * is filed back under its next attempt when woken, so that it produces on the same turns as if it
+ * had tried on each of them.
+ *
+ * <p>Buildings due on the same turn produce in the order they were added, as they did when every
+ * building was told of every turn in turn, so a game plays out the same. The wheel is played, and
+ * resources are added, by the thread playing the game; it is not thread-safe.
+ */
+public final class ProductionScheduler {
+  /** Slots of the wheel; buildings due further away than this are passed over until due. */
+  private static final int SLOTS = 64;
+
+  private static final ResourceType[] TYPES = ResourceType.values();
+  /** Bit of {@link Entry#listed} for {@link #waitingForUnits}, after those of the types. */
+  private static final int UNITS = 1 << TYPES.length;
+
+  private final List<List<Entry>> wheel = new ArrayList<>(SLOTS);
+  private final List<Entry> entries = new ArrayList<>();
+  /** Parked buildings, by ordinal of the type they lack. */
+  private final List<List<Entry>> waiting = new ArrayList<>(TYPES.length);
+  /** Parked buildings that also wait for the units of the map to change. */
+  private final List<Entry> waitingForUnits = new ArrayList<>();
+  /** {@link WorldMap#getToolCandidateChanges()} when the units were last looked at. */
+  private long unitChanges = 0;
+  /** Buildings producing on the current turn, in order. */
+  private final List<Entry> waking = new ArrayList<>();
+  /** The building producing, while a turn is played, or null between turns. */
+  private Entry producing;
+  /** Buildings that produced or were added since {@link #takeChanged()}, or null if not kept. */
+  private List<Entry> changed;
+  /** Number of turns played. */
+  private int turn = 0;
+
+  public ProductionScheduler() {
+    for (int i = 0; i < SLOTS; i++) {
+      wheel.add(new ArrayList<>());
+    }
+    for (int i = 0; i < TYPES.length; i++) {
+      waiting.add(new ArrayList<>());
+    }
+  }
+
+  /** Schedules a building, which has played no turn yet. */
+  public void add(final IBuilding building) {
+    Entry entry = new Entry(building, entries.size(), turn);
+    entries.add(entry);
+    schedule(entry);
+    changed(entry);
+  }
+
+  /** Plays a turn: wakes the buildings due, and lets them produce in the order they were added. */
+  public void tick(final WorldMap worldMap, final Inventory inventory) {
+    checkUnits(worldMap);
+    turn++;
+    List<Entry> slot = wheel.get(turn % SLOTS);
+    int kept = 0;
+    waking.clear();
+    for (int i = 0; i < slot.size(); i++) {
+      Entry entry = slot.get(i);
+      if (entry.due == turn) {
+        waking.add(entry);
+      } else {
+        slot.set(kept++, entry);
+      }
+    }
+    slot.subList(kept, slot.size()).clear();
+    // Buildings woken by the units changing during the turn join the list as it is played.
+    for (int i = 0; i < waking.size(); i++) {
+      Entry entry = waking.get(i);
+      producing = entry;
+      catchUp(entry, turn - 1);
+      long start = TurnMetrics.start();
+      entry.building.produce(worldMap, inventory);
+      TurnMetrics.end(Phase.PRODUCTION, start);
+      entry.synced = turn;
+      file(entry);
+      changed(entry);
+      checkUnits(worldMap);
+    }
+    producing = null;
+  }
+
+  /** Number of turns played, see {@link #tick(WorldMap, Inventory)}. */
+  public int getTurn() {
+    return turn;
+  }
+
+  /** Catches every building up on the turns it waited through, before its state is read whole. */
+  public void sync() {
+    for (Entry entry : entries) {
+      catchUp(entry, turn);
+    }
+  }
+
+  /** Wakes the buildings waiting for a resource, which has just been added to the inventory. */
+  public void restocked(final ResourceType type) {
+    List<Entry> list = waiting.get(type.ordinal());
+    if (!list.isEmpty()) {
+      drain(list, 1 << type.ordinal());
+    }
+  }
+
+  /** Wakes the buildings waiting for the units of the map, if they changed since last looked at. */
+  private void checkUnits(final WorldMap worldMap) {
+    long changes = worldMap.getToolCandidateChanges();
+    if (changes != unitChanges) {
+      unitChanges = changes;
+      drain(waitingForUnits, UNITS);
+    }
+  }
+
+  /**
+   * Starts or stops keeping the buildings that produced or were added, see {@link #takeChanged()}.
+   */
+  public void setRecordingChanges(final boolean recording) {
+    for (Entry entry : entries) {
+      entry.recorded = false;
+    }
+    changed = recording ? new ArrayList<>() : null;
+  }
+
+  /**
+   * Gets the buildings that produced or were added since the last call, while recording. They are
+   * caught up to the last turn played, so that any other building has only waited since it was
+   * last taken, or tried to produce and failed the same way as it did then, see {@link
+   * #catchUp(IBuilding, int)}.
+   *
+   * @return their positions among all buildings, in increasing order
+   */
+  public int[] takeChanged() {
+    if (changed == null) return new int[0];
+    int[] taken = new int[changed.size()];
+    for (int i = 0; i < taken.length; i++) {
+      Entry entry = changed.get(i);
+      catchUp(entry, turn);
+      entry.recorded = false;
+      taken[i] = entry.order;
+    }
+    changed.clear();
+    Arrays.sort(taken);
+    return taken;
+  }
+
+  private void changed(final Entry entry) {
+    if (changed != null && !entry.recorded) {
+      entry.recorded = true;
+      changed.add(entry);
+    }
+  }
+
+  /** Files a building that just tried to produce, parking it if it lacked a resource. */
+  private void file(final Entry entry) {
+    ResourceType shortage = entry.building.getShortage();
+    if (shortage == null) {
+      schedule(entry);
+      return;
+    }
+    entry.parked = true;
+    park(entry, waiting.get(shortage.ordinal()), 1 << shortage.ordinal());
+    if (entry.building.dependsOnUnits()) {
+      park(entry, waitingForUnits, UNITS);
+    }
+  }
+
+  /** Lists a parked building, unless it is still listed from an earlier parking. */
+  private static void park(final Entry entry, final List<Entry> list, final int bit) {
+    if ((entry.listed & bit) == 0) {
+      entry.listed |= bit;
+      list.add(entry);
+    }
+  }
+
+  private void drain(final List<Entry> list, final int bit) {
+    for (Entry entry : list) {
+      entry.listed &= ~bit;
+      if (entry.parked) {
+        wake(entry);
+      }
+    }
+    list.clear();
+  }
+
+  /**
+   * Files a parked building back under its next attempt. While a turn is played, a building due
+   * on it tries to produce if it comes after the building that woke it, and is played as having
+   * failed again otherwise, as the change came after its attempt.
+   */
+  private void wake(final Entry entry) {
+    if (producing == null) {
+      catchUp(entry, turn);
+    } else {
+      catchUp(entry, turn - 1);
+      if (entry.synced + entry.building.getProductionTime() + 1 == turn) {
+        if (entry.order > producing.order) {
+          entry.parked = false;
+          entry.due = turn;
+          int index = waking.size();
+          while (waking.get(index - 1).order > entry.order) {
+            index--;
+          }
+          waking.add(index, entry);
+          return;
+        }
+        catchUp(entry, turn);
+      }
+    }
+    entry.parked = false;
+    schedule(entry);
+  }
+
+  private static void catchUp(final Entry entry, final int turn) {
+    if (entry.synced < turn) {
+      catchUp(entry.building, turn - entry.synced);
+      entry.synced = turn;
+    }
+  }
+
+  /**
+   * Plays turns of a building that does not produce on any of them: it waits while its production
+   * time runs out, and on the turns it then tries to produce, fails the same way as on its last
+   * attempt (see {@link IBuilding#failAgain()}). As every failed attempt leaves the building in the
+   * same state, this takes constant time however many turns pass.
+   */
+  public static void catchUp(final IBuilding building, final int turns) {
+    int waited = building.getProductionTime();
+    if (turns <= waited) {
+      building.idle(turns);
+      return;
+    }
+    building.idle(waited);
+    building.failAgain();
+    int left = (turns - waited - 1) % (building.getProductionTime() + 1);
+    building.idle(left);
+  }
+
+  /** Files a building under the turn it will next try to produce, after those added before it. */
+  private void schedule(final Entry entry) {
+    entry.due = entry.synced + entry.building.getProductionTime() + 1;
+    List<Entry> slot = wheel.get(entry.due % SLOTS);
+    int index = slot.size();
+    while (index > 0 && slot.get(index - 1).order > entry.order) {
+      index--;
+    }
+    slot.add(index, entry);
+  }
+
+  private static final class Entry {
+    private final IBuilding building;
+    /** Position of the building among all buildings. */
+    private final int order;
+    /** Turn up to which the building's state was played. */
+    private int synced;
+    /** Turn on which the building next tries to produce, while filed. */
+    private int due;
+    /** Whether the building is parked rather than filed. */
+    private boolean parked;
+    /** Waiting lists holding the building: a bit per type ordinal, and {@link #UNITS}. */
+    private int listed;
+    /** Whether the building is in {@link #changed}. */
+    private boolean recorded;
+
+    private Entry(final IBuilding building, final int order, final int synced) {
+      this.building = building;
+      this.order = order;
+      this.synced = synced;
+    }
+  }
+}
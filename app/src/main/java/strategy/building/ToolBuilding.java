@@ -1,7 +1,8 @@
 package strategy.building;
 
-import java.util.Comparator;
-import java.util.HashSet;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
@@ -13,10 +14,13 @@ import strategy.world.ResourceType;
 import strategy.world.WorldMap;
 
 public class ToolBuilding implements IBuilding {
+  static final byte KIND = 1;
 
   private final List<ResourceType> targets;
   private BuildingStatus buildingStatus;
   private int productionTime;
+  /** The resource the building lacked on its last attempt, or null. */
+  private ResourceType shortage = null;
 
   public ToolBuilding(List<ResourceType> targets) {
     this.targets = targets;
@@ -27,50 +31,79 @@ public class ToolBuilding implements IBuilding {
   @Override
   public void produce(final WorldMap worldMap, final Inventory inventory) {
     if (productionTime > 0) {
-      productionTime--;
-      buildingStatus = BuildingStatus.IN_PROGRESS;
+      idle(1);
       return;
     }
     productionTime = Config.BUILDING_PRODUCTION_TIME;
     int efficiency = Config.TOOL_BASE_EFFICIENCY;
-    Unit unit =
-        worldMap.getUnits().stream()
-            .filter(u -> u.getTool() == null)
-            .findFirst()
-            .orElse(
-                worldMap.getUnits().stream()
-                    .filter(
-                        u ->
-                            u.getTool().targets().size() == targets.size()
-                                && new HashSet<>(u.getTool().targets()).containsAll(targets))
-                    .min(Comparator.comparingInt(u -> u.getTool().efficiency()))
-                    .orElse(null));
+    Unit unit = worldMap.findToolCandidate(targets);
+    shortage = null;
     if (unit != null) {
       Map<ResourceType, Integer> cost = new java.util.HashMap<>(Config.TOOL_COST);
       if (unit.getTool() != null) {
         cost.keySet().forEach(k -> cost.put(k, cost.get(k) * unit.getTool().efficiency() + 1));
       }
-      if (inventory.containsResources(cost)) {
-        unit.setTool(new Tool(efficiency, targets));
-        inventory.removeResources(cost);
+      if (inventory.tryRemoveResources(cost)) {
+        unit.setTool(Tool.of(efficiency, targets));
         buildingStatus = BuildingStatus.PRODUCED;
       } else {
+        shortage = inventory.findShortage(cost);
         buildingStatus = BuildingStatus.NOT_ENOUGH_RESOURCES;
       }
     }
   }
 
+  @Override
+  public int getProductionTime() {
+    return productionTime;
+  }
+
+  @Override
+  public void idle(final int turns) {
+    if (turns == 0) return;
+    productionTime -= turns;
+    buildingStatus = BuildingStatus.IN_PROGRESS;
+  }
+
+  @Override
+  public ResourceType getShortage() {
+    return shortage;
+  }
+
+  /** The cost of a tool depends on the tool of the unit it goes to. */
+  @Override
+  public boolean dependsOnUnits() {
+    return true;
+  }
+
+  @Override
+  public void failAgain() {
+    productionTime = Config.BUILDING_PRODUCTION_TIME;
+    buildingStatus = BuildingStatus.NOT_ENOUGH_RESOURCES;
+  }
+
+  @Override
+  public void write(final DataOutput out) throws IOException {
+    out.writeByte(KIND);
+    ResourceType.write(out, targets);
+    out.writeByte(buildingStatus.ordinal());
+    out.writeInt(productionTime);
+  }
+
+  static ToolBuilding read(final DataInput in) throws IOException {
+    ToolBuilding building = new ToolBuilding(ResourceType.readList(in));
+    building.buildingStatus = BuildingStatus.read(in);
+    building.productionTime = in.readInt();
+    if (building.productionTime < 0 || building.productionTime > Config.BUILDING_PRODUCTION_TIME) {
+      throw new IOException("Corrupt building production time " + building.productionTime);
+    }
+    return building;
+  }
+
   @Override
   public String toString() {
     return "Tool factory ("
-        + Config.JOBS.entrySet().stream()
-            .filter(
-                e ->
-                    targets.size() == e.getValue().size()
-                        && new HashSet<>(targets).containsAll(e.getValue()))
-            .map(Map.Entry::getKey)
-            .findFirst()
-            .orElse(targets.size() > 0 ? targets.toString() : "Unemployed")
+        + Tool.jobName(ResourceType.mask(targets))
         + "): "
         + switch (buildingStatus) {
           case PRODUCED -> "produced last turn";
@@ -1,11 +1,15 @@
 package strategy.building;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.SplittableRandom;
 
 import strategy.Config;
+import strategy.Utils;
 import strategy.producible.Tool;
 import strategy.producible.unit.Unit;
 import strategy.world.Inventory;
@@ -13,52 +17,101 @@ import strategy.world.ResourceType;
 import strategy.world.WorldMap;
 
 public class UnitBuilding implements IBuilding {
+  static final byte KIND = 0;
 
   private final List<ResourceType> targets;
   private BuildingStatus buildingStatus = BuildingStatus.IN_PROGRESS;
   private int productionTime = Config.BUILDING_PRODUCTION_TIME;
+  /** Seed of the building: the n-th unit it produces is placed using stream n of it. */
+  private final long seed;
 
-  public UnitBuilding(List<ResourceType> targets) {
+  private int produced = 0;
+  /** The resource the building lacked on its last attempt, or null. */
+  private ResourceType shortage = null;
+
+  public UnitBuilding(List<ResourceType> targets, final long seed) {
     this.targets = targets;
+    this.seed = seed;
   }
 
   @Override
   public void produce(final WorldMap worldMap, final Inventory inventory) {
     if (productionTime > 0) {
-      productionTime--;
-      buildingStatus = BuildingStatus.IN_PROGRESS;
+      idle(1);
       return;
     }
     productionTime = Config.BUILDING_PRODUCTION_TIME;
     Map<ResourceType, Integer> cost = Config.UNIT_COST;
-    if (inventory.containsResources(cost)) {
-      inventory.removeResources(cost);
+    if (inventory.tryRemoveResources(cost)) {
+      shortage = null;
+      SplittableRandom random = Utils.random(seed, produced++);
       Unit unit =
           new Unit(
-              (int) (Math.random() * worldMap.width()),
-              (int) (Math.random() * worldMap.height()),
+              random.nextInt(worldMap.width()),
+              random.nextInt(worldMap.height()),
               new ArrayList<>());
       if (targets.size() > 0) {
-        unit.setTool(new Tool(Config.TOOL_BASE_EFFICIENCY, targets));
+        unit.setTool(Tool.of(Config.TOOL_BASE_EFFICIENCY, targets));
       }
       worldMap.insertUnits(List.of(unit));
       buildingStatus = BuildingStatus.PRODUCED;
       return;
     }
+    shortage = inventory.findShortage(cost);
     buildingStatus = BuildingStatus.NOT_ENOUGH_RESOURCES;
   }
 
+  @Override
+  public int getProductionTime() {
+    return productionTime;
+  }
+
+  @Override
+  public void idle(final int turns) {
+    if (turns == 0) return;
+    productionTime -= turns;
+    buildingStatus = BuildingStatus.IN_PROGRESS;
+  }
+
+  @Override
+  public ResourceType getShortage() {
+    return shortage;
+  }
+
+  @Override
+  public void failAgain() {
+    productionTime = Config.BUILDING_PRODUCTION_TIME;
+    buildingStatus = BuildingStatus.NOT_ENOUGH_RESOURCES;
+  }
+
+  @Override
+  public void write(final DataOutput out) throws IOException {
+    out.writeByte(KIND);
+    ResourceType.write(out, targets);
+    out.writeByte(buildingStatus.ordinal());
+    out.writeInt(productionTime);
+    out.writeLong(seed);
+    out.writeInt(produced);
+  }
+
+  static UnitBuilding read(final DataInput in) throws IOException {
+    List<ResourceType> targets = ResourceType.readList(in);
+    BuildingStatus status = BuildingStatus.read(in);
+    int productionTime = in.readInt();
+    if (productionTime < 0 || productionTime > Config.BUILDING_PRODUCTION_TIME) {
+      throw new IOException("Corrupt building production time " + productionTime);
+    }
+    UnitBuilding building = new UnitBuilding(targets, in.readLong());
+    building.buildingStatus = status;
+    building.productionTime = productionTime;
+    building.produced = in.readInt();
+    return building;
+  }
+
   @Override
   public String toString() {
     return "Unit factory ("
-        + Config.JOBS.entrySet().stream()
-            .filter(
-                e ->
-                    targets.size() == e.getValue().size()
-                        && new HashSet<>(targets).containsAll(e.getValue()))
-            .map(Map.Entry::getKey)
-            .findFirst()
-            .orElse(targets.size() > 0 ? targets.toString() : "Unemployed")
+        + Tool.jobName(ResourceType.mask(targets))
         + "): "
         + switch (buildingStatus) {
           case PRODUCED -> "produced last turn";
@@ -0,0 +1,104 @@
+package strategy.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <b>Histogram of latencies, in nanoseconds.</b>
+ *
+ * <p>Latencies are counted in buckets that split each power of two in {@value #SUB_BUCKETS}, so a
+ * percentile is read to within an eighth of its value. Recording only increments counters, and may
+ * happen from several threads at once.
+ */
+public final class LatencyHistogram implements LatencyHistogramMBean {
+  private static final int SUB_BUCKETS = 8;
+  private static final int SUB_BITS = 3;
+  private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong total = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  public void record(final long nanos) {
+    long value = Math.max(nanos, 0);
+    buckets.incrementAndGet(bucket(value));
+    count.incrementAndGet();
+    total.addAndGet(value);
+    max.accumulateAndGet(value, Math::max);
+  }
+
+  private static int bucket(final long value) {
+    if (value < SUB_BUCKETS) return (int) value;
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+  }
+
+  /** Largest value counted in a bucket. */
+  private static long upperBound(final int bucket) {
+    if (bucket < SUB_BUCKETS) return bucket;
+    int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+    long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BITS);
+    return lower + (1L << (exponent - SUB_BITS)) - 1;
+  }
+
+  /** Smallest bucket bound that at least {@code percentile} of the latencies are below. */
+  public long percentile(final double percentile) {
+    long count = this.count.get();
+    if (count == 0) return 0;
+    long rank = (long) Math.ceil(count * percentile);
+    long seen = 0;
+    for (int bucket = 0; bucket < BUCKETS; bucket++) {
+      seen += buckets.get(bucket);
+      if (seen >= rank) return Math.min(upperBound(bucket), max.get());
+    }
+    return max.get();
+  }
+
+  @Override
+  public long getCount() {
+    return count.get();
+  }
+
+  @Override
+  public long getTotalNanos() {
+    return total.get();
+  }
+
+  @Override
+  public double getMeanNanos() {
+    long count = this.count.get();
+    return count == 0 ? 0 : (double) total.get() / count;
+  }
+
+  @Override
+  public long getP50Nanos() {
+    return percentile(0.5);
+  }
+
+  @Override
+  public long getP90Nanos() {
+    return percentile(0.9);
+  }
+
+  @Override
+  public long getP99Nanos() {
+    return percentile(0.99);
+  }
+
+  @Override
+  public long getMaxNanos() {
+    return max.get();
+  }
+
+  @Override
+  public void reset() {
+    for (int bucket = 0; bucket < BUCKETS; bucket++) {
+      buckets.set(bucket, 0);
+    }
+    count.set(0);
+    total.set(0);
+    max.set(0);
+  }
+}
@@ -0,0 +1,20 @@
+package strategy.metrics;
+
+/** <b>JMX view of a {@link LatencyHistogram}.</b> */
+public interface LatencyHistogramMBean {
+  long getCount();
+
+  long getTotalNanos();
+
+  double getMeanNanos();
+
+  long getP50Nanos();
+
+  long getP90Nanos();
+
+  long getP99Nanos();
+
+  long getMaxNanos();
+
+  void reset();
+}
@@ -0,0 +1,153 @@
+package strategy.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * <b>Latencies of the phases of a turn, published through JMX.</b>
+ *
+ * <p>A phase is timed by taking {@link #start()} before it and passing it to {@link #end(Phase,
+ * long)} after it. While metrics are disabled, {@link #start()} returns 0 without reading the clock
+ * and {@link #end(Phase, long)} ignores it, so instrumented code costs a field read.
+ *
+ * <p>Phases may nest: a {@link Phase#TURN} includes every other phase, and searches for an empty
+ * cell made while a {@link Phase#GROUP} splits count in both.
+ *
+ * <p>{@link #register()} publishes the metrics under {@code strategy:type=TurnMetrics}, from where
+ * they can be enabled, and each phase under {@code strategy:type=TurnMetrics,phase=<name>}.
+ */
+public final class TurnMetrics implements TurnMetricsMBean {
+  private static final TurnMetrics INSTANCE = new TurnMetrics();
+  private static final Phase[] PHASES = Phase.values();
+  private static final LatencyHistogram[] HISTOGRAMS = new LatencyHistogram[PHASES.length];
+  private static final LongAdder SEARCH_NODES = new LongAdder();
+
+  private static volatile boolean enabled = false;
+  private static boolean registered = false;
+
+  static {
+    for (int i = 0; i < HISTOGRAMS.length; i++) {
+      HISTOGRAMS[i] = new LatencyHistogram();
+    }
+  }
+
+  private TurnMetrics() {}
+
+  /** Phases of a turn. */
+  public enum Phase {
+    /** A whole turn, buildings included. */
+    TURN,
+    /** Looking up the targets of all units ahead of their turns, when planning in parallel. */
+    PLAN,
+    EAT,
+    MINE,
+    /** A search for the closest resource or empty cell. */
+    SEARCH,
+    MOVE,
+    /** A group letting go of the members that left it or can no longer mine. */
+    GROUP,
+    /** A building producing. */
+    PRODUCTION
+  }
+
+  public static boolean isOn() {
+    return enabled;
+  }
+
+  public static void enable(final boolean enabled) {
+    TurnMetrics.enabled = enabled;
+  }
+
+  /** Start of a phase, or 0 when metrics are disabled. */
+  public static long start() {
+    return enabled ? System.nanoTime() : 0;
+  }
+
+  /** Records a phase started at {@code start}, unless metrics were disabled when it started. */
+  public static void end(final Phase phase, final long start) {
+    if (start != 0) {
+      HISTOGRAMS[phase.ordinal()].record(System.nanoTime() - start);
+    }
+  }
+
+  /** Counts cells examined by a search. */
+  public static void searched(final long nodes) {
+    if (enabled) {
+      SEARCH_NODES.add(nodes);
+    }
+  }
+
+  public static LatencyHistogram histogram(final Phase phase) {
+    return HISTOGRAMS[phase.ordinal()];
+  }
+
+  /** Publishes the metrics to the platform MBean server, once. */
+  public static synchronized void register() {
+    if (registered) return;
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      server.registerMBean(INSTANCE, new ObjectName("strategy:type=TurnMetrics"));
+      for (Phase phase : PHASES) {
+        server.registerMBean(
+            histogram(phase),
+            new ObjectName("strategy:type=TurnMetrics,phase=" + phase.name().toLowerCase()));
+      }
+    } catch (JMException e) {
+      throw new IllegalStateException("Could not register turn metrics", e);
+    }
+    registered = true;
+  }
+
+  /** One line per phase that was recorded, with its count and latencies in microseconds. */
+  public static String report() {
+    StringBuilder report = new StringBuilder();
+    for (Phase phase : PHASES) {
+      LatencyHistogram histogram = histogram(phase);
+      if (histogram.getCount() == 0) continue;
+      report.append(
+          ("%-10s %10d calls, total %10.3f ms, mean %9.3f us, p50 %9.3f us, p99 %9.3f us,"
+                  + " max %9.3f us\n")
+              .formatted(
+                  phase.name().toLowerCase(),
+                  histogram.getCount(),
+                  histogram.getTotalNanos() / 1e6,
+                  histogram.getMeanNanos() / 1e3,
+                  histogram.getP50Nanos() / 1e3,
+                  histogram.getP99Nanos() / 1e3,
+                  histogram.getMaxNanos() / 1e3));
+    }
+    report.append("search nodes expanded: ").append(SEARCH_NODES.sum()).append('\n');
+    return report.toString();
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return isOn();
+  }
+
+  @Override
+  public void setEnabled(final boolean enabled) {
+    enable(enabled);
+  }
+
+  @Override
+  public long getSearchNodesExpanded() {
+    return SEARCH_NODES.sum();
+  }
+
+  @Override
+  public String getReport() {
+    return report();
+  }
+
+  @Override
+  public void reset() {
+    for (LatencyHistogram histogram : HISTOGRAMS) {
+      histogram.reset();
+    }
+    SEARCH_NODES.reset();
+  }
+}
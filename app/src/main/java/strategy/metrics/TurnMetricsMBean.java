@@ -0,0 +1,16 @@
+package strategy.metrics;
+
+/** <b>JMX view of {@link TurnMetrics}.</b> */
+public interface TurnMetricsMBean {
+  boolean isEnabled();
+
+  void setEnabled(boolean enabled);
+
+  /** Cells examined by searches for resources or empty cells. */
+  long getSearchNodesExpanded();
+
+  /** One line per phase, as printed by the headless runner. */
+  String getReport();
+
+  void reset();
+}
@@ -1,7 +1,11 @@
 package strategy.producible;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.jetbrains.annotations.Contract;
+import strategy.Config;
 import strategy.world.ResourceType;
 
 /**
@@ -9,8 +13,90 @@ import strategy.world.ResourceType;
  *
  * <p>Tools are used by units to mine resources. They have an efficiency and a list of resources
  * they can mine. They can be produced by buildings.
+ *
+ * <p>Targets are kept as a bitmask of {@link ResourceType} ordinals, see {@link
+ * ResourceType#mask(List)}, so that checking a target or a job is a bit operation. Tools are
+ * immutable and interned: {@link #of(int, List)} returns the same instance for the same efficiency
+ * and targets, which units share.
  */
-public record Tool(int efficiency, List<ResourceType> targets) {
+public final class Tool {
+  private static final ResourceType[] TYPES = ResourceType.values();
+  private static final Map<Long, Tool> INTERNED = new ConcurrentHashMap<>();
+  /** Name of the job of {@link Config#JOBS} mining each set of targets, by bitmask, or null. */
+  private static final String[] JOBS = new String[1 << TYPES.length];
+
+  static {
+    Config.JOBS.forEach(
+        (job, targets) -> {
+          int mask = ResourceType.mask(targets);
+          if (JOBS[mask] == null) {
+            JOBS[mask] = job;
+          }
+        });
+  }
+
+  private final int efficiency;
+  private final int mask;
+  /** The targets, by ordinal. */
+  private final List<ResourceType> targets;
+
+  private final String job;
+
+  private Tool(final int efficiency, final int mask) {
+    this.efficiency = efficiency;
+    this.mask = mask;
+    List<ResourceType> targets = new ArrayList<>();
+    for (ResourceType type : TYPES) {
+      if ((mask & type.bit()) != 0) targets.add(type);
+    }
+    this.targets = List.copyOf(targets);
+    job = jobName(mask);
+  }
+
+  /** Gets the tool of the given efficiency mining the given resources. */
+  public static Tool of(final int efficiency, final List<ResourceType> targets) {
+    return of(efficiency, ResourceType.mask(targets));
+  }
+
+  /** Gets the tool of the given efficiency mining the resources of a bitmask. */
+  public static Tool of(final int efficiency, final int mask) {
+    return INTERNED.computeIfAbsent(
+        (long) efficiency << 32 | mask, key -> new Tool(efficiency, mask));
+  }
+
+  /**
+   * Name of the job mining exactly the resources of a bitmask: the job of {@link Config#JOBS} if
+   * there is one, the list of resources otherwise, or "Unemployed" if there are none.
+   */
+  public static String jobName(final int mask) {
+    if (JOBS[mask] != null) return JOBS[mask];
+    if (mask == 0) return "Unemployed";
+    List<ResourceType> targets = new ArrayList<>();
+    for (ResourceType type : TYPES) {
+      if ((mask & type.bit()) != 0) targets.add(type);
+    }
+    return targets.toString();
+  }
+
+  public int efficiency() {
+    return efficiency;
+  }
+
+  /** Gets the resources the tool can mine, by ordinal. */
+  public List<ResourceType> targets() {
+    return targets;
+  }
+
+  /** Gets the bitmask of the resources the tool can mine. */
+  public int mask() {
+    return mask;
+  }
+
+  /** Gets the name of the job of the units using this tool, see {@link #jobName(int)}. */
+  public String job() {
+    return job;
+  }
+
   /**
    * Whether the tool can mine a certain resource.
    *
@@ -19,6 +105,17 @@ public record Tool(int efficiency, List<ResourceType> targets) {
    */
   @Contract(pure = true)
   public boolean canMine(final ResourceType type) {
-    return this.targets.contains(type);
+    return (mask & type.bit()) != 0;
+  }
+
+  /** Whether the tool mines exactly the given resources, in any order. */
+  @Contract(pure = true)
+  public boolean hasTargets(final List<ResourceType> targets) {
+    return mask == ResourceType.mask(targets);
+  }
+
+  @Override
+  public String toString() {
+    return "Tool[efficiency=" + efficiency + ", targets=" + targets + "]";
   }
 }
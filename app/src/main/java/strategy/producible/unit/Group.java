@@ -1,41 +1,132 @@
 package strategy.producible.unit;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicReference;
-
 import org.jetbrains.annotations.NotNull;
 import strategy.Config;
+import strategy.metrics.TurnMetrics;
+import strategy.metrics.TurnMetrics.Phase;
 import strategy.producible.Tool;
 import strategy.world.Cell;
 import strategy.world.Inventory;
 import strategy.world.ResourceType;
 import strategy.world.WorldMap;
 
+/**
+ * <b>Units sharing a cell, moving and mining together.</b>
+ *
+ * <p>The stats of a group are aggregated from its members as they join, leave or change, so that
+ * they are read in constant time whatever the size of the group. Members tell their group when
+ * their stats change, see {@link #memberChanged(Unit)}.
+ */
 public class Group extends Unit {
+  private static final ResourceType[] TYPES = ResourceType.values();
 
   private final List<Unit> units;
 
+  /** Speeds of the members, with how many members have each. */
+  private final TreeMap<Integer, Integer> speeds = new TreeMap<>();
+
+  private int hunger = 0;
+  private int xp = 0;
+  /** Members able to mine. */
+  private int miners = 0;
+  /** Summed efficiency of the members able to mine each type, by type ordinal. */
+  private final int[] efficiencySums = new int[TYPES.length];
+  /** Members able to mine each type, by type ordinal. */
+  private final int[] efficiencyCounts = new int[TYPES.length];
+  /** Efficiency of the group on each type, by type ordinal, or -1 until it is computed again. */
+  private final int[] efficiencies = new int[TYPES.length];
+
   public Group(final int x, final int y) {
     super(x, y, new ArrayList<>());
     units = new ArrayList<>();
+    Arrays.fill(efficiencies, -1);
   }
 
   public void addUnit(final Unit unit) {
     if (unit instanceof Group) {
-      units.addAll(((Group) unit).getUnits());
+      ((Group) unit).getUnits().forEach(this::join);
     } else {
-      units.add(unit);
+      join(unit);
     }
   }
 
+  private void join(final Unit unit) {
+    units.add(unit);
+    unit.memberOf = this;
+    count(unit);
+    xp += unit.getXp();
+  }
+
   public void removeUnit(final Unit unit) {
-    units.remove(unit);
+    if (units.remove(unit)) {
+      leave(unit);
+    }
+  }
+
+  private void leave(final Unit unit) {
+    uncount(unit);
+    xp -= unit.getXp();
+    unit.memberOf = null;
   }
 
+  /**
+   * Gets the members of the group.
+   *
+   * @return the members, which must only be changed through {@link #addUnit(Unit)} and {@link
+   *     #removeUnit(Unit)}
+   */
   public List<Unit> getUnits() {
     return units;
   }
 
+  /** Called by a member whose speed, hunger, efficiency, tool or ability to mine changed. */
+  void memberChanged(final Unit unit) {
+    uncount(unit);
+    count(unit);
+  }
+
+  /** Called by a member that gained experience. */
+  void memberGainedXp(final int xp) {
+    this.xp += xp;
+  }
+
+  /** Adds the current stats of a member to the aggregates, remembering them on the member. */
+  private void count(final Unit unit) {
+    unit.countedSpeed = unit.getSpeed();
+    unit.countedHunger = unit.getHunger();
+    unit.countedMining = unit.canMine();
+    unit.countedTargets = 0;
+    unit.countedEfficiency = 0;
+    Tool tool = unit.getTool();
+    if (unit.countedMining && tool != null && tool.mask() != 0) {
+      unit.countedTargets = tool.mask();
+      unit.countedEfficiency = unit.getEfficiency(tool.targets().get(0));
+    }
+    speeds.merge(unit.countedSpeed, 1, Integer::sum);
+    apply(unit, 1);
+  }
+
+  /** Removes the stats a member was counted with from the aggregates. */
+  private void uncount(final Unit unit) {
+    speeds.compute(unit.countedSpeed, (speed, count) -> count == 1 ? null : count - 1);
+    apply(unit, -1);
+  }
+
+  private void apply(final Unit unit, final int sign) {
+    hunger += sign * unit.countedHunger;
+    if (unit.countedMining) miners += sign;
+    for (int type = 0; type < TYPES.length; type++) {
+      if ((unit.countedTargets & 1 << type) == 0) continue;
+      efficiencySums[type] += sign * unit.countedEfficiency;
+      efficiencyCounts[type] += sign;
+      efficiencies[type] = -1;
+    }
+  }
+
   @Override
   public void setX(int x) {
     super.setX(x);
@@ -50,27 +141,32 @@ public class Group extends Unit {
 
   @Override
   public int getSpeed() {
-    return units.stream().mapToInt(Unit::getSpeed).min().orElse(0);
+    return speeds.isEmpty() ? 0 : speeds.firstKey();
   }
 
   @Override
   public int getHunger() {
-    return units.stream().mapToInt(Unit::getHunger).sum();
+    return hunger;
   }
 
+  /**
+   * The summed efficiency of the members able to mine the type, multiplied by {@link
+   * Config#GROUP_EFFICIENCY_MULTIPLIER} once per such member.
+   *
+   * <p>The multiplier is applied in single precision one member at a time, as it always was, so
+   * the result is kept until the members able to mine the type change.
+   */
   @Override
   public int getEfficiency(final ResourceType type) {
-    List<Unit> units =
-        this.units.stream()
-            .filter(Unit::canMine)
-            .filter(unit -> unit.getTool().canMine(type))
-            .toList();
-    AtomicReference<Float> base =
-        new AtomicReference<>((float) units.stream().mapToInt(u -> u.getEfficiency(type)).sum());
-    units.forEach(
-        u ->
-            base.updateAndGet(v -> (float) (v * Config.GROUP_EFFICIENCY_MULTIPLIER)));
-    return (int) Math.floor(base.get());
+    int ordinal = type.ordinal();
+    if (efficiencies[ordinal] < 0) {
+      float efficiency = efficiencySums[ordinal];
+      for (int i = 0; i < efficiencyCounts[ordinal]; i++) {
+        efficiency = (float) (efficiency * Config.GROUP_EFFICIENCY_MULTIPLIER);
+      }
+      efficiencies[ordinal] = (int) Math.floor(efficiency);
+    }
+    return efficiencies[ordinal];
   }
 
   @Override
@@ -80,7 +176,7 @@ public class Group extends Unit {
 
   @Override
   public int getXp() {
-    return units.stream().mapToInt(Unit::getXp).sum();
+    return xp;
   }
 
   @Override
@@ -93,20 +189,26 @@ public class Group extends Unit {
     return null;
   }
 
+  /** Gives the tool to the member with the least efficient tool mining the same targets. */
   @Override
   public void setTool(final Tool tool) {
-    units.stream()
-        .filter(
-            u ->
-                u.getTool().targets().size() == tool.targets().size()
-                    && new HashSet<>(u.getTool().targets()).containsAll(tool.targets()))
-        .min(Comparator.comparingInt(u -> u.getTool().efficiency()))
-        .ifPresent(u -> u.setTool(tool));
+    Unit weakest = null;
+    for (Unit unit : units) {
+      Tool current = unit.getTool();
+      if (current != null
+          && current.hasTargets(tool.targets())
+          && (weakest == null || current.efficiency() < weakest.getTool().efficiency())) {
+        weakest = unit;
+      }
+    }
+    if (weakest != null) {
+      weakest.setTool(tool);
+    }
   }
 
   @Override
   public boolean canMine() {
-    return units.stream().anyMatch(Unit::canMine);
+    return miners > 0;
   }
 
   @Override
@@ -124,32 +226,87 @@ public class Group extends Unit {
     units.forEach(u -> u.eat(inventory));
   }
 
+  /** Writes the group's position, then its members. */
+  @Override
+  public void write(final DataOutput out) throws IOException {
+    out.writeBoolean(true);
+    out.writeInt(getX());
+    out.writeInt(getY());
+    out.writeBoolean(hasPlayed());
+    out.writeInt(units.size());
+    for (Unit unit : units) {
+      unit.write(out);
+    }
+  }
+
+  static Group readGroup(final DataInput in) throws IOException {
+    Group group = new Group(in.readInt(), in.readInt());
+    group.setHasPlayed(in.readBoolean());
+    int count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      group.addUnit(Unit.read(in));
+    }
+    return group;
+  }
+
+  @Override
+  public void planTarget(final WorldMap worldMap) {
+    units.forEach(u -> u.planTarget(worldMap));
+  }
+
+  /**
+   * Lets go of the members that can no longer mine, and of those no longer on the group's cell.
+   *
+   * <p>Members that cannot mine are spread over the closest empty cells, found by a single search
+   * from the group's cell, closest cells to the first members. Members leave before being placed,
+   * as the cell they join may hold another group, and the member list is rebuilt in one pass.
+   */
+  private void disperse(final WorldMap worldMap) {
+    List<Unit> stalled = new ArrayList<>();
+    List<Unit> kept = new ArrayList<>(units.size());
+    for (Unit unit : units) {
+      if (!unit.canMine()) {
+        stalled.add(unit);
+      } else if (unit.getX() == getX() && unit.getY() == getY()) {
+        kept.add(unit);
+      } else {
+        leave(unit);
+      }
+    }
+    if (kept.size() == units.size()) return;
+    stalled.forEach(this::leave);
+    units.clear();
+    units.addAll(kept);
+    if (stalled.isEmpty()) return;
+    List<Cell> cells =
+        worldMap.getCell(getX(), getY()).findClosestEmptyCells(worldMap, stalled.size());
+    for (int i = 0; i < cells.size(); i++) {
+      Unit unit = stalled.get(i);
+      Cell cell = cells.get(i);
+      unit.setX(cell.getX());
+      unit.setY(cell.getY());
+      cell.insertUnit(unit);
+    }
+    if (cells.size() < stalled.size()) {
+      worldMap.unitsDropped();
+    }
+  }
+
   @Override
   public void turn(final WorldMap worldMap, final Inventory inventory) {
-    units.forEach(u -> u.turn(worldMap, inventory));
-    List<Unit> toRemove =
-        units.stream()
-            .filter(u -> !u.canMine())
-            .peek(
-                u -> {
-                  Cell cell = worldMap.getCell(u.getX(), u.getY()).findClosestEmpty(worldMap);
-                  if (cell != null) {
-                    u.setX(cell.getX());
-                    u.setY(cell.getY());
-                    cell.insertUnit(u);
-                  }
-                })
-            .toList();
-    toRemove.forEach(this::removeUnit);
-    units.stream()
-        .filter(unit -> unit.getX() != getX() || unit.getY() != getY())
-        .toList()
-        .forEach(this::removeUnit);
+    // Members moving away leave the group during their turn.
+    new ArrayList<>(units).forEach(u -> u.turn(worldMap, inventory));
+    long start = TurnMetrics.start();
+    disperse(worldMap);
+    TurnMetrics.end(Phase.GROUP, start);
+    Cell cell = worldMap.getCell(getX(), getY());
+    if (cell.getUnit() != this) return;
     if (units.size() == 1) {
       Unit unit = units.remove(0);
-      worldMap.getCell(getX(), getY()).setUnit(unit);
+      leave(unit);
+      cell.setUnit(unit);
     } else if (units.isEmpty()) {
-      worldMap.getCell(getX(), getY()).setUnit(null);
+      cell.setUnit(null);
     }
   }
 }
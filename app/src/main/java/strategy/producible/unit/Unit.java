@@ -1,15 +1,22 @@
 package strategy.producible.unit;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import org.jetbrains.annotations.NotNull;
 import strategy.Config;
 import strategy.Utils;
+import strategy.metrics.TurnMetrics;
+import strategy.metrics.TurnMetrics.Phase;
 import strategy.producible.Tool;
 import strategy.producible.unit.modifier.UnitModifier;
 import strategy.world.Cell;
+import strategy.world.CellSearch;
+import strategy.world.CellStorage;
 import strategy.world.Inventory;
 import strategy.world.ResourceType;
 import strategy.world.WorldMap;
@@ -45,6 +52,41 @@ public class Unit {
   private boolean hasPlayed = false;
   /** The tool the unit is equipped with. */
   private Tool tool;
+  /** Number of times the unit was given a different tool. */
+  private int toolVersion = 0;
+  /** The map the unit was placed on, if any. */
+  private WorldMap worldMap;
+
+  /** The group the unit is a member of, if any. */
+  Group memberOf;
+
+  /** Order in which the unit entered its map, or -1. */
+  private long sequence = -1;
+
+  /** Stats the unit was last counted with in its group's aggregates, see {@link Group}. */
+  int countedSpeed;
+
+  int countedHunger;
+  int countedEfficiency;
+  boolean countedMining;
+  /** Bitmask, by type ordinal, of the types the unit was counted as able to mine. */
+  int countedTargets;
+
+  /** Whether the resolved stats below match the current modifiers and tool. */
+  private boolean statsResolved = false;
+
+  /** Turn for which {@link #plannedTarget} was looked up, or -1. */
+  private int plannedTurn = -1;
+
+  private int plannedX;
+  private int plannedY;
+  /** Index of the closest target found from ({@link #plannedX}, {@link #plannedY}), or -1. */
+  private int plannedTarget;
+
+  private int resolvedSpeed;
+  private int resolvedHunger;
+  /** Efficiency on the tool's targets. */
+  private int resolvedEfficiency;
 
   public Unit(final int x, final int y, final List<UnitModifier> modifiers) {
     this.x = x;
@@ -78,14 +120,8 @@ public class Unit {
    * @return the unit's speed
    */
   public int getSpeed() {
-    AtomicInteger speed = new AtomicInteger(this.speed);
-    getActiveModifiers().stream()
-        .filter(UnitModifier::isSpeedMultiplier)
-        .forEach(modifier -> speed.set(modifier.updateSpeed(speed.get())));
-    getActiveModifiers().stream()
-        .filter(modifier -> !modifier.isSpeedMultiplier())
-        .forEach(modifier -> speed.set(modifier.updateSpeed(speed.get())));
-    return speed.get();
+    if (!statsResolved) resolveStats();
+    return resolvedSpeed;
   }
 
   /**
@@ -94,14 +130,8 @@ public class Unit {
    * @return the unit's hunger
    */
   public int getHunger() {
-    AtomicInteger hunger = new AtomicInteger(this.hunger);
-    getActiveModifiers().stream()
-        .filter(UnitModifier::isHungerMultiplier)
-        .forEach(modifier -> hunger.set(modifier.updateHunger(hunger.get())));
-    getActiveModifiers().stream()
-        .filter(modifier -> !modifier.isHungerMultiplier())
-        .forEach(modifier -> hunger.set(modifier.updateHunger(hunger.get())));
-    return hunger.get();
+    if (!statsResolved) resolveStats();
+    return resolvedHunger;
   }
 
   /**
@@ -111,24 +141,52 @@ public class Unit {
    */
   public int getEfficiency(final ResourceType resourceType) {
     if (tool == null) return 0;
-    if (!tool.targets().contains(resourceType)) return 0;
-    AtomicInteger efficiency = new AtomicInteger(tool.efficiency());
-    getActiveModifiers().stream()
-        .filter(UnitModifier::isEfficiencyMultiplier)
-        .forEach(modifier -> efficiency.set(modifier.updateEfficiency(efficiency.get())));
-    getActiveModifiers().stream()
-        .filter(modifier -> !modifier.isEfficiencyMultiplier())
-        .forEach(modifier -> efficiency.set(modifier.updateEfficiency(efficiency.get())));
-    return efficiency.get();
+    if (!tool.canMine(resourceType)) return 0;
+    if (!statsResolved) resolveStats();
+    return resolvedEfficiency;
+  }
+
+  /**
+   * <b>Mark the unit's stats as needing to be resolved again.</b>
+   *
+   * <p>Called whenever one of the unit's modifiers is activated or deactivated, or its tool
+   * changes.
+   */
+  public void invalidateStats() {
+    statsResolved = false;
+    if (memberOf != null) {
+      memberOf.memberChanged(this);
+    }
+  }
+
+  /**
+   * Applies the active modifiers to the base stats: modifiers that multiply a stat are applied
+   * first, then those that add to it.
+   */
+  private void resolveStats() {
+    int speed = this.speed;
+    int hunger = this.hunger;
+    int efficiency = tool == null ? 0 : tool.efficiency();
+    for (int pass = 0; pass < 2; pass++) {
+      boolean multipliers = pass == 0;
+      for (int i = 0; i < modifiers.size(); i++) {
+        UnitModifier modifier = modifiers.get(i);
+        if (!modifier.isActive()) continue;
+        if (modifier.isSpeedMultiplier() == multipliers) speed = modifier.updateSpeed(speed);
+        if (modifier.isHungerMultiplier() == multipliers) hunger = modifier.updateHunger(hunger);
+        if (modifier.isEfficiencyMultiplier() == multipliers) {
+          efficiency = modifier.updateEfficiency(efficiency);
+        }
+      }
+    }
+    resolvedSpeed = speed;
+    resolvedHunger = hunger;
+    resolvedEfficiency = efficiency;
+    statsResolved = true;
   }
 
   public String getJob() {
-    if (tool == null) return "Unemployed";
-    return Config.JOBS.entrySet().stream()
-        .filter(entry -> entry.getValue().equals(tool.targets()))
-        .findFirst()
-        .map(Map.Entry::getKey)
-        .orElse(tool.targets().size() > 0 ? tool.targets().toString() : "Unemployed");
+    return tool == null ? "Unemployed" : tool.job();
   }
 
   public int getXp() {
@@ -137,6 +195,9 @@ public class Unit {
 
   public void addXp(final int xp) {
     this.xp += xp;
+    if (memberOf != null) {
+      memberOf.memberGainedXp(xp);
+    }
   }
 
   public Tool getTool() {
@@ -144,7 +205,22 @@ public class Unit {
   }
 
   public void setTool(final Tool tool) {
+    if (tool == this.tool) return;
     this.tool = tool;
+    toolVersion++;
+    invalidateStats();
+    if (worldMap != null) {
+      worldMap.toolChanged(this);
+    }
+  }
+
+  /**
+   * Gets the number of times the unit was given a different tool, to tell what was recorded about
+   * its current tool from what was recorded about its past ones. Tools are interned, so giving a
+   * unit the tool it holds changes nothing.
+   */
+  public int getToolVersion() {
+    return toolVersion;
   }
 
   public boolean canMine() {
@@ -152,7 +228,46 @@ public class Unit {
   }
 
   public void setCanMine(final boolean canMine) {
+    if (this.canMine == canMine) return;
+    if (worldMap != null) {
+      worldMap.miningChanged(canMine);
+    }
     this.canMine = canMine;
+    if (memberOf != null) {
+      memberOf.memberChanged(this);
+    }
+  }
+
+  public WorldMap getWorldMap() {
+    return worldMap;
+  }
+
+  /**
+   * Binds the unit to the map it was placed on. Called by the map itself.
+   *
+   * @see WorldMap#getMiningUnitCount()
+   */
+  public void setWorldMap(final WorldMap worldMap) {
+    this.worldMap = worldMap;
+  }
+
+  /**
+   * Gets the order in which the unit entered its map, set by the map: units entering later have a
+   * greater sequence. Kept in snapshots, so that a resumed game picks units in the same order.
+   *
+   * @return the sequence, or -1 if the unit was never placed on a map
+   */
+  public long getSequence() {
+    return sequence;
+  }
+
+  public void setSequence(final long sequence) {
+    this.sequence = sequence;
+  }
+
+  /** Gets the group the unit is a member of, or null. */
+  public Group getGroup() {
+    return memberOf;
   }
 
   public boolean hasPlayed() {
@@ -172,6 +287,11 @@ public class Unit {
     return modifiers.stream().filter(UnitModifier::isActive).collect(Collectors.toList());
   }
 
+  /** <b>Get the modifiers that can affect the unit, active or not.</b> */
+  public List<UnitModifier> getModifiers() {
+    return Collections.unmodifiableList(modifiers);
+  }
+
   /**
    * <b>Mine resources from the cell the unit is on.</b>
    *
@@ -186,7 +306,7 @@ public class Unit {
     if (canMine()) {
       Cell cell = worldMap.getCell(getX(), getY());
       ResourceType resourceType = cell.getType();
-      if (tool.targets().contains(resourceType) && cell.getAmount() > 0) {
+      if (tool.canMine(resourceType) && cell.getAmount() > 0) {
         int amount = cell.mine(getEfficiency(resourceType));
         inventory.addResources(resourceType, amount);
         addXp(amount);
@@ -206,7 +326,17 @@ public class Unit {
    */
   public void move(final int x, final int y, final WorldMap worldMap) {
     if (!canMine()) return;
-    worldMap.getCell(getX(), getY()).setUnit(null);
+    Cell origin = worldMap.getCell(getX(), getY());
+    Unit occupant = origin.getUnit();
+    if (occupant == this) {
+      origin.setUnit(null);
+    } else if (occupant instanceof Group group) {
+      // The group stays on its cell with its remaining members.
+      group.removeUnit(this);
+      if (group.getUnits().isEmpty()) {
+        origin.setUnit(null);
+      }
+    }
     int distance =
         Math.abs(Utils.clamp(x, 0, worldMap.width()) - getX())
             + Math.abs(Utils.clamp(y, 0, worldMap.height()) - getY());
@@ -242,33 +372,145 @@ public class Unit {
    * Inventory}. If not, the unit will not be able to mine resources.
    */
   public void eat(@NotNull Inventory inventory) {
-    setCanMine(inventory.getResources(ResourceType.FOOD) >= getHunger());
-    if (canMine()) {
-      inventory.removeResources(ResourceType.FOOD, getHunger());
-    }
+    setCanMine(inventory.tryRemoveResources(ResourceType.FOOD, getHunger()));
   }
 
   public void turn(final WorldMap worldMap, final Inventory inventory) {
+    long start = TurnMetrics.start();
     eat(inventory);
-    if (!mine(worldMap, inventory) && getTool() != null) {
-      Cell closest =
-          worldMap.getCell(getX(), getY()).findClosestResources(getTool().targets(), worldMap);
+    TurnMetrics.end(Phase.EAT, start);
+    start = TurnMetrics.start();
+    boolean mined = mine(worldMap, inventory);
+    TurnMetrics.end(Phase.MINE, start);
+    if (!mined && getTool() != null) {
+      Cell closest = findTarget(worldMap);
       if (closest != null) {
+        start = TurnMetrics.start();
         move(closest.getX(), closest.getY(), worldMap);
+        TurnMetrics.end(Phase.MOVE, start);
       }
     }
     this.modifiers.forEach(UnitModifier::update);
   }
 
+  /**
+   * <b>Look up the closest target ahead of the unit's turn.</b>
+   *
+   * <p>This only reads the map, so all units may plan concurrently before any of them plays. Units
+   * standing on a cell they can mine are skipped, as they will most likely mine it instead.
+   */
+  public void planTarget(final WorldMap worldMap) {
+    plannedTurn = -1;
+    if (tool == null) return;
+    CellStorage storage = worldMap.storage();
+    if (storage.getAmount(x, y) > 0 && tool.canMine(storage.getType(x, y))) return;
+    plannedTarget = worldMap.findClosestResource(x, y, tool.targets(), CellSearch.UNBOUNDED);
+    plannedX = x;
+    plannedY = y;
+    plannedTurn = worldMap.getTurn();
+  }
+
+  /**
+   * Finds the closest cell holding resources the unit's tool can mine.
+   *
+   * <p>A target planned for this turn from the same position is reused if it still holds
+   * resources: resources only ever decrease, so it is then still the closest one.
+   */
+  private Cell findTarget(final WorldMap worldMap) {
+    if (plannedTurn == worldMap.getTurn() && plannedX == x && plannedY == y) {
+      if (plannedTarget < 0) return null;
+      Cell planned =
+          worldMap.getCell(plannedTarget % worldMap.width(), plannedTarget / worldMap.width());
+      if (planned.getAmount() > 0) return planned;
+    }
+    return worldMap.getCell(x, y).findClosestResources(tool.targets(), worldMap);
+  }
+
+  /**
+   * <b>Write the unit's state to a snapshot.</b>
+   *
+   * <p>Modifiers are written as their index in {@link Config#UNIT_MODIFIERS}, so that reading a
+   * snapshot only ever creates the modifiers the game knows of.
+   */
+  public void write(final DataOutput out) throws IOException {
+    out.writeBoolean(false);
+    out.writeInt(x);
+    out.writeInt(y);
+    writeState(out);
+  }
+
+  /**
+   * <b>Write the unit's state but for its position</b>, as {@link #write} does after the position.
+   */
+  public void writeState(final DataOutput out) throws IOException {
+    out.writeLong(sequence);
+    out.writeInt(xp);
+    out.writeBoolean(canMine);
+    out.writeBoolean(hasPlayed);
+    out.writeBoolean(tool != null);
+    if (tool != null) {
+      out.writeInt(tool.efficiency());
+      ResourceType.write(out, tool.targets());
+    }
+    out.writeByte(modifiers.size());
+    for (UnitModifier modifier : modifiers) {
+      int index = Config.UNIT_MODIFIERS.indexOf(modifier.getClass());
+      if (index < 0) {
+        throw new IOException("Unit modifier " + modifier.getClass().getName() + " is not known");
+      }
+      out.writeByte(index);
+      modifier.write(out);
+    }
+  }
+
+  /** <b>Read a unit or a group written by {@link #write}.</b> */
+  public static Unit read(final DataInput in) throws IOException {
+    if (in.readBoolean()) {
+      return Group.readGroup(in);
+    }
+    return readState(in.readInt(), in.readInt(), in);
+  }
+
+  /** <b>Read a unit standing at a position, whose state was written by {@link #writeState}.</b> */
+  public static Unit readState(final int x, final int y, final DataInput in) throws IOException {
+    long sequence = in.readLong();
+    int xp = in.readInt();
+    boolean canMine = in.readBoolean();
+    boolean hasPlayed = in.readBoolean();
+    Tool tool = in.readBoolean() ? Tool.of(in.readInt(), ResourceType.readList(in)) : null;
+    List<UnitModifier> modifiers = new ArrayList<>();
+    int count = in.readUnsignedByte();
+    for (int i = 0; i < count; i++) {
+      int index = in.readUnsignedByte();
+      if (index >= Config.UNIT_MODIFIERS.size()) {
+        throw new IOException("Unknown unit modifier " + index);
+      }
+      UnitModifier modifier;
+      try {
+        modifier = Config.UNIT_MODIFIERS.get(index).getDeclaredConstructor().newInstance();
+      } catch (ReflectiveOperationException e) {
+        throw new IOException("Could not create unit modifier " + index, e);
+      }
+      modifier.read(in);
+      modifiers.add(modifier);
+    }
+    Unit unit = new Unit(x, y, modifiers);
+    unit.sequence = sequence;
+    unit.xp = xp;
+    unit.canMine = canMine;
+    unit.hasPlayed = hasPlayed;
+    unit.tool = tool;
+    return unit;
+  }
+
   @Override
   public String toString() {
-    String format =
-        hasPlayed() ? "{(%d %d) %s (%s)}" : canMine() ? "[(%d %d) %s (%s)]" : "((%d %d) %s (%s))";
-    return String.format(
-        format,
-        getX(),
-        getY(),
-        getJob(),
-        getActiveModifiers().stream().map(UnitModifier::indicator).collect(Collectors.joining("")));
+    StringBuilder builder = new StringBuilder();
+    builder.append(hasPlayed() ? '{' : canMine() ? '[' : '(');
+    builder.append('(').append(getX()).append(' ').append(getY()).append(") ");
+    builder.append(getJob()).append(" (");
+    getActiveModifiers().forEach(modifier -> builder.append(modifier.indicator()));
+    builder.append(')').append(hasPlayed() ? '}' : canMine() ? ']' : ')');
+    return builder.toString();
   }
 }
@@ -1,5 +1,8 @@
 package strategy.producible.unit.modifier;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import strategy.Config;
 
 /**
@@ -55,20 +58,20 @@ public class ExpertModifier extends UnitModifier {
   @Override
   public void update() {
     if (unit == null) {
-      active = false;
+      setActive(false);
       return;
     }
-    if (active) {
+    if (isActive()) {
       if (unit.canMine()) deactivateCountdown = Config.EXPERT_DEACTIVATE_COUNTDOWN;
       else {
         deactivateCountdown--;
         if (deactivateCountdown == 0) {
-          active = false;
+          setActive(false);
           deactivateCountdown = Config.EXPERT_DEACTIVATE_COUNTDOWN;
         }
       }
     } else if (unit.getXp() > Config.EXPERT_XP_THRESHOLD && unit.canMine()) {
-      active = true;
+      setActive(true);
     }
   }
 
@@ -76,4 +79,16 @@ public class ExpertModifier extends UnitModifier {
   public String indicator() {
     return "E";
   }
+
+  @Override
+  public void write(final DataOutput out) throws IOException {
+    super.write(out);
+    out.writeInt(deactivateCountdown);
+  }
+
+  @Override
+  public void read(final DataInput in) throws IOException {
+    super.read(in);
+    deactivateCountdown = in.readInt();
+  }
 }
@@ -21,13 +21,13 @@ public class RiderModifier extends UnitModifier {
   @Override
   public void update() {
     if (unit == null) {
-      active = false;
+      setActive(false);
       return;
     }
-    if (active && !unit.canMine()) {
-      active = false;
+    if (isActive() && !unit.canMine()) {
+      setActive(false);
     } else if (unit.canMine()) {
-      active = true;
+      setActive(true);
     }
   }
 
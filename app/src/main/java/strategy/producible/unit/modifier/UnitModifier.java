@@ -1,5 +1,8 @@
 package strategy.producible.unit.modifier;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import strategy.producible.unit.Unit;
 
 /**
@@ -16,7 +19,7 @@ public abstract class UnitModifier {
   protected Unit unit = null;
 
   /** <b>Whether this modifier is active or not.</b> */
-  protected boolean active = false;
+  private boolean active = false;
 
   public Unit getUnit() {
     return unit;
@@ -30,6 +33,19 @@ public abstract class UnitModifier {
     return active;
   }
 
+  /**
+   * <b>Activate or deactivate this modifier.</b>
+   *
+   * <p>The unit caches its stats, so it is told whenever the modifier's state actually changes.
+   */
+  protected void setActive(final boolean active) {
+    if (this.active == active) return;
+    this.active = active;
+    if (unit != null) {
+      unit.invalidateStats();
+    }
+  }
+
   /**
    * <b>Whether this modifier should be applied as a multiplier for the efficiency stat.</b>
    *
@@ -101,4 +117,18 @@ public abstract class UnitModifier {
   public void update() {}
 
   public abstract String indicator();
+
+  /**
+   * <b>Write the modifier's state to a snapshot.</b>
+   *
+   * <p>Modifiers with state of their own write it after calling this.
+   */
+  public void write(final DataOutput out) throws IOException {
+    out.writeBoolean(active);
+  }
+
+  /** <b>Restore the modifier's state from a snapshot, as written by {@link #write}.</b> */
+  public void read(final DataInput in) throws IOException {
+    active = in.readBoolean();
+  }
 }
@@ -0,0 +1,44 @@
+package strategy.session;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+
+/**
+ * <b>The player at the terminal.</b>
+ *
+ * <p>There is a single console session, so that every prompt reads from the same buffered reader
+ * of {@code System.in} and no input typed ahead is lost between prompts.
+ */
+public final class ConsoleSession implements Session {
+  private static final ConsoleSession INSTANCE = new ConsoleSession();
+
+  private final BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+
+  private ConsoleSession() {}
+
+  public static ConsoleSession get() {
+    return INSTANCE;
+  }
+
+  @Override
+  public synchronized String readLine() {
+    System.out.flush();
+    try {
+      return in.readLine();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public PrintStream out() {
+    return System.out;
+  }
+
+  /** Leaves the terminal open: it is shared by the whole process. */
+  @Override
+  public void close() {}
+}
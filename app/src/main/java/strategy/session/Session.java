@@ -0,0 +1,23 @@
+package strategy.session;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+
+/**
+ * <b>The commands of a player, and where to answer them.</b>
+ *
+ * <p>A game reads every command of its player through its session, and prints everything the
+ * player sees to {@link #out()}, so that the same game can be played from the terminal, see {@link
+ * ConsoleSession}, or from a connection, see {@link SocketSession}.
+ */
+public interface Session extends Closeable {
+  /**
+   * Reads the next line entered by the player, once what was printed has reached them.
+   *
+   * @return the line, or null once the player is gone
+   */
+  String readLine();
+
+  /** Where to print what the player sees. */
+  PrintStream out();
+}
@@ -0,0 +1,168 @@
+package strategy.session;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import strategy.Config;
+import strategy.Game;
+
+/**
+ * <b>Hosts a game for each player connecting to a local TCP port.</b>
+ *
+ * <p>Each connection gets a game of its own, played by a thread of its own through a {@link
+ * SocketSession}, and ends when the player quits, wins, loses or disconnects. A player's thread
+ * spends its life waiting for the player's next line, so games are played by virtual threads where
+ * the runtime has them (Java 21 and later, looked up by reflection so that the game still builds
+ * and runs on Java 17), and by a cached pool of daemon platform threads otherwise. Thousands of
+ * idle players then cost a few kilobytes of heap each rather than a stack each, and a command is
+ * answered as soon as it is read rather than when a pooled thread frees up.
+ *
+ * <p>The host only listens on the loopback interface.
+ */
+public final class SessionHost implements Closeable {
+  private final ServerSocket server;
+  private final Supplier<Game> games;
+  private final ExecutorService players;
+  private final boolean virtual;
+  /** Sessions being played, to disconnect them when the host closes. */
+  private final Set<SocketSession> sessions = ConcurrentHashMap.newKeySet();
+
+  private final AtomicInteger connected = new AtomicInteger();
+
+  /**
+   * Listens on a local port.
+   *
+   * @param port the port, or 0 for any free port, see {@link #getPort()}
+   * @param games creates the game of each player that connects
+   */
+  public SessionHost(final int port, final Supplier<Game> games) throws IOException {
+    this.games = games;
+    server = new ServerSocket();
+    server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    ExecutorService players = virtualThreadPerTaskExecutor();
+    virtual = players != null;
+    this.players = virtual ? players : platformThreadPerTaskExecutor();
+  }
+
+  /** {@code Executors.newVirtualThreadPerTaskExecutor()}, or null if the runtime has none. */
+  private static ExecutorService virtualThreadPerTaskExecutor() {
+    try {
+      return (ExecutorService)
+          Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  private static ExecutorService platformThreadPerTaskExecutor() {
+    AtomicInteger count = new AtomicInteger();
+    return Executors.newCachedThreadPool(
+        runnable -> {
+          Thread thread = new Thread(runnable, "session-" + count.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+  }
+
+  public int getPort() {
+    return server.getLocalPort();
+  }
+
+  /** Whether players are served by virtual threads. */
+  public boolean isVirtual() {
+    return virtual;
+  }
+
+  /** Number of players connected. */
+  public int getSessionCount() {
+    return connected.get();
+  }
+
+  /** Accepts players until the host is closed. */
+  public void serve() throws IOException {
+    while (!server.isClosed()) {
+      Socket socket;
+      try {
+        socket = server.accept();
+      } catch (SocketException e) {
+        if (server.isClosed()) return;
+        throw e;
+      }
+      socket.setTcpNoDelay(true);
+      players.execute(() -> play(socket));
+    }
+  }
+
+  private void play(final Socket socket) {
+    connected.incrementAndGet();
+    try (SocketSession session = new SocketSession(socket)) {
+      sessions.add(session);
+      try (Game game = games.get()) {
+        game.play(session);
+      } finally {
+        sessions.remove(session);
+      }
+    } catch (IOException e) {
+      // The player is gone: there is no one left to tell.
+    } catch (RuntimeException e) {
+      // A bug in a game only ends the session of its player.
+      System.err.println("Session from " + socket.getRemoteSocketAddress() + " failed: " + e);
+    } finally {
+      connected.decrementAndGet();
+      try {
+        socket.close();
+      } catch (IOException e) {
+        // Already disconnected.
+      }
+    }
+  }
+
+  /** Stops accepting players, and disconnects those playing. */
+  @Override
+  public void close() throws IOException {
+    server.close();
+    for (SocketSession session : sessions) {
+      session.close();
+    }
+    players.shutdown();
+  }
+
+  /** Hosts games of the default size on the port following {@code --host}. */
+  public static void main(final String[] args) {
+    int port = -1;
+    for (int i = 0; i + 1 < args.length; i++) {
+      if (args[i].equals("--host")) {
+        try {
+          port = Integer.parseInt(args[i + 1]);
+        } catch (NumberFormatException e) {
+          port = -1;
+        }
+      }
+    }
+    if (port < 0 || port > 65535) {
+      System.err.println("Usage: --host <port>");
+      System.exit(1);
+      return;
+    }
+    try (SessionHost host =
+        new SessionHost(port, () -> new Game(Config.WIDTH, Config.HEIGHT))) {
+      System.out.printf(
+          "Hosting games on localhost:%d, one %s thread per player\n",
+          host.getPort(), host.isVirtual() ? "virtual" : "platform");
+      host.serve();
+    } catch (IOException e) {
+      System.err.println("Hosting failed: " + e.getMessage());
+      System.exit(1);
+    }
+  }
+}
@@ -0,0 +1,55 @@
+package strategy.session;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <b>A player connected through a socket.</b>
+ *
+ * <p>What the game prints is buffered, and sent when the game waits for the player's next line, so
+ * that a command is answered in as few packets as possible.
+ */
+public final class SocketSession implements Session {
+  private final Socket socket;
+  private final BufferedReader in;
+  private final PrintStream out;
+
+  public SocketSession(final Socket socket) throws IOException {
+    this.socket = socket;
+    in =
+        new BufferedReader(
+            new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    out =
+        new PrintStream(
+            new BufferedOutputStream(socket.getOutputStream()), false, StandardCharsets.UTF_8);
+  }
+
+  /** Reads the player's next line, or null once they disconnected or the session was closed. */
+  @Override
+  public String readLine() {
+    out.flush();
+    if (out.checkError()) return null;
+    try {
+      return in.readLine();
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  @Override
+  public PrintStream out() {
+    return out;
+  }
+
+  /** Sends what is left to send, and disconnects the player. */
+  @Override
+  public void close() throws IOException {
+    out.flush();
+    socket.close();
+  }
+}
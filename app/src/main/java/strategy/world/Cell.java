@@ -1,9 +1,10 @@
 package strategy.world;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Queue;
+import java.util.Objects;
+import strategy.metrics.TurnMetrics;
+import strategy.metrics.TurnMetrics.Phase;
 import strategy.producible.unit.Group;
 import strategy.producible.unit.Unit;
 
@@ -12,22 +13,21 @@ import strategy.producible.unit.Unit;
  *
  * <p>Each cell has a {@link ResourceType} and an amount of that resource. It can also contain a
  * {@link Unit}.
+ *
+ * <p>Where the contents are stored depends on the {@link CellStorage} of the map: a cell may hold
+ * them itself, or only be a view over the storage. Cells are therefore compared by coordinates.
  */
-public class Cell {
+public abstract class Cell {
+  /** The map this cell belongs to, kept informed of depleted cells. */
+  protected final WorldMap worldMap;
+
   private final int x;
   private final int y;
-  private final ResourceType type;
-  private int amount;
-  private Unit unit;
 
-  public Cell(final int x, final int y) {
+  protected Cell(final WorldMap worldMap, final int x, final int y) {
+    this.worldMap = worldMap;
     this.x = x;
     this.y = y;
-    type = ResourceType.getRandomType();
-    amount =
-        Math.random() < type.getSpawnChance()
-            ? (int) Math.floor(Math.random() * type.getMaxVeinSize())
-            : 0;
   }
 
   public int getX() {
@@ -38,20 +38,27 @@ public class Cell {
     return y;
   }
 
-  public ResourceType getType() {
-    return type;
-  }
+  public abstract ResourceType getType();
 
-  public int getAmount() {
-    return amount;
-  }
+  public abstract int getAmount();
 
-  public Unit getUnit() {
-    return unit;
-  }
+  protected abstract void setAmount(final int amount);
 
+  public abstract Unit getUnit();
+
+  /** Stores a unit in this cell, without telling the map. */
+  protected abstract void storeUnit(final Unit unit);
+
+  /**
+   * Sets the unit in this cell, replacing any unit already there.
+   *
+   * <p>The map's unit registry is updated accordingly.
+   */
   public void setUnit(final Unit unit) {
-    this.unit = unit;
+    Unit previous = getUnit();
+    if (previous == unit) return;
+    storeUnit(unit);
+    worldMap.occupantChanged(x, y, unit);
   }
 
   /**
@@ -62,16 +69,18 @@ public class Cell {
    * @param unit the unit to insert
    */
   public void insertUnit(final Unit unit) {
-    if (this.unit == null) {
-      this.unit = unit;
+    worldMap.attach(unit);
+    Unit current = getUnit();
+    if (current == null) {
+      setUnit(unit);
     } else {
-      if (this.unit instanceof Group) {
-        ((Group) this.unit).addUnit(unit);
+      if (current instanceof Group) {
+        ((Group) current).addUnit(unit);
       } else {
         final Group group = new Group(x, y);
-        group.addUnit(this.unit);
+        group.addUnit(current);
         group.addUnit(unit);
-        this.unit = group;
+        setUnit(group);
       }
     }
   }
@@ -83,13 +92,18 @@ public class Cell {
    * @return the amount mined
    */
   public int mine(final int amount) {
-    if (this.amount > amount) {
-      this.amount -= amount;
+    final int current = getAmount();
+    if (current > amount) {
+      setAmount(current - amount);
+      worldMap.mined(x, y, getType(), amount);
       return amount;
     } else {
-      final int mined = this.amount;
-      this.amount = 0;
-      return mined;
+      setAmount(0);
+      if (current > 0) {
+        worldMap.mined(x, y, getType(), current);
+        worldMap.depleted(x, y, getType());
+      }
+      return current;
     }
   }
 
@@ -100,63 +114,68 @@ public class Cell {
    * @return the closest cell of one of the given types
    */
   public Cell findClosestResources(final List<ResourceType> types, final WorldMap worldMap) {
-    Queue<Cell> queue = new ArrayDeque<>();
-    List<Cell> visited = new ArrayList<>();
-    queue.add(this);
-    visited.add(this);
-    while (!queue.isEmpty()) {
-      Cell cell = queue.poll();
-      if (types.contains(cell.getType()) && cell.getAmount() > 0) {
-        return cell;
-      }
-      checkNeighbours(worldMap, queue, visited, cell);
-    }
-    return null;
+    return findClosestResources(types, worldMap, CellSearch.UNBOUNDED);
+  }
+
+  /**
+   * Finds the closest cell of one of the given types in the world map, searching at most {@code
+   * maxRadius} moves away.
+   *
+   * @param types the types to find
+   * @param maxRadius how far to search, or {@link CellSearch#UNBOUNDED}
+   * @return the closest cell of one of the given types, or null if there is none in range
+   */
+  public Cell findClosestResources(
+      final List<ResourceType> types, final WorldMap worldMap, final int maxRadius) {
+    return worldMap.cellAt(worldMap.findClosestResource(x, y, types, maxRadius));
   }
 
   public Cell findClosestEmpty(final WorldMap worldMap) {
-    Queue<Cell> queue = new ArrayDeque<>();
-    List<Cell> visited = new ArrayList<>();
-    queue.add(this);
-    visited.add(this);
-    while (!queue.isEmpty()) {
-      Cell cell = queue.poll();
-      if (cell.getUnit() == null) {
-        return cell;
-      }
-      checkNeighbours(worldMap, queue, visited, cell);
-    }
-    return null;
+    return findClosestEmpty(worldMap, CellSearch.UNBOUNDED);
   }
 
-  private void checkNeighbours(WorldMap worldMap, Queue<Cell> queue, List<Cell> visited, Cell cell) {
-    if (cell.getX() > 0) {
-      Cell left = worldMap.getCell(cell.getX() - 1, cell.getY());
-      if (!visited.contains(left)) {
-        queue.add(left);
-        visited.add(left);
-      }
-    }
-    if (cell.getX() < worldMap.width() - 1) {
-      Cell right = worldMap.getCell(cell.getX() + 1, cell.getY());
-      if (!visited.contains(right)) {
-        queue.add(right);
-        visited.add(right);
-      }
-    }
-    if (cell.getY() > 0) {
-      Cell top = worldMap.getCell(cell.getX(), cell.getY() - 1);
-      if (!visited.contains(top)) {
-        queue.add(top);
-        visited.add(top);
-      }
-    }
-    if (cell.getY() < worldMap.height() - 1) {
-      Cell bottom = worldMap.getCell(cell.getX(), cell.getY() + 1);
-      if (!visited.contains(bottom)) {
-        queue.add(bottom);
-        visited.add(bottom);
-      }
+  /**
+   * Finds the closest cell without a unit, searching at most {@code maxRadius} moves away.
+   *
+   * @param maxRadius how far to search, or {@link CellSearch#UNBOUNDED}
+   * @return the closest empty cell, or null if there is none in range
+   */
+  public Cell findClosestEmpty(final WorldMap worldMap, final int maxRadius) {
+    long start = TurnMetrics.start();
+    Cell closest = worldMap.cellAt(worldMap.search().findClosestEmpty(x, y, maxRadius));
+    TurnMetrics.end(Phase.SEARCH, start);
+    return closest;
+  }
+
+  /**
+   * Finds the closest cells without a unit in one search, as if each were filled before looking for
+   * the next one.
+   *
+   * @param count how many cells to find
+   * @return the closest empty cells, closest first, fewer than {@code count} if the map runs out
+   */
+  public List<Cell> findClosestEmptyCells(final WorldMap worldMap, final int count) {
+    long start = TurnMetrics.start();
+    int[] found = new int[count];
+    int size = worldMap.search().findClosestEmpty(x, y, CellSearch.UNBOUNDED, found);
+    List<Cell> cells = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      cells.add(worldMap.cellAt(found[i]));
     }
+    TurnMetrics.end(Phase.SEARCH, start);
+    return cells;
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) return true;
+    if (!(o instanceof Cell)) return false;
+    Cell cell = (Cell) o;
+    return x == cell.x && y == cell.y;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(x, y);
   }
 }
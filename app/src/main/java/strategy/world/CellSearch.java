@@ -0,0 +1,202 @@
+package strategy.world;
+
+import java.util.Arrays;
+import java.util.List;
+import strategy.Utils;
+import strategy.metrics.TurnMetrics;
+
+/**
+ * <b>Reusable breadth-first search over the cells of a {@link WorldMap}.</b>
+ *
+ * <p>Visited cells are marked with a generation stamp instead of being collected, and the frontier
+ * is kept in a preallocated ring buffer, so a search does not allocate once the engine exists.
+ * Neighbours are explored left, right, top then bottom, and a search returns the first matching
+ * cell it dequeues, so among cells at the same distance the result is always the same.
+ *
+ * <p>An engine may be limited to a window of {@code 2 * radius + 1} cells around the searched cell,
+ * for maps too large to stamp every cell, in which case it never searches further than {@code
+ * radius}. As there are no obstacles, a search within the window finds the same cell as a search of
+ * the whole map limited to that radius.
+ *
+ * <p>An engine is bound to one map and is not thread-safe.
+ */
+public final class CellSearch {
+  /** Radius meaning the search may explore the whole map. */
+  public static final int UNBOUNDED = Integer.MAX_VALUE;
+
+  private static final ResourceType[] TYPES = ResourceType.values();
+
+  private final CellStorage storage;
+  private final int width;
+  private final int height;
+  /** Largest radius the engine can search. */
+  private final int windowRadius;
+
+  private final int windowWidth;
+  private final int windowHeight;
+  /** Generation at which each cell of the window was last visited. */
+  private final int[] stamps;
+  /** Frontier of the current search, as cell indices. */
+  private final int[] queue;
+  /** Result of a search for a single cell. */
+  private final int[] closest = new int[1];
+  /** Resource types accepted by the current resource search, by ordinal. */
+  private final boolean[] accepted = new boolean[TYPES.length];
+
+  private int generation = 0;
+  /** Coordinates of the top left cell of the window of the current search. */
+  private int originX;
+
+  private int originY;
+  private int head;
+  private int size;
+  private long expandedNodes = 0;
+
+  /** Creates an engine that can search the whole map. */
+  CellSearch(final CellStorage storage) {
+    this(storage, UNBOUNDED);
+  }
+
+  /** Creates an engine searching at most {@code windowRadius} moves away. */
+  CellSearch(final CellStorage storage, final int windowRadius) {
+    this.storage = storage;
+    this.windowRadius = windowRadius;
+    width = storage.width();
+    height = storage.height();
+    windowWidth = (int) Math.min(width, 2L * windowRadius + 1);
+    windowHeight = (int) Math.min(height, 2L * windowRadius + 1);
+    stamps = new int[windowWidth * windowHeight];
+    queue = new int[windowWidth * windowHeight];
+  }
+
+  /**
+   * Finds the closest non-empty cell of one of the given types.
+   *
+   * @param x the x coordinate to search from
+   * @param y the y coordinate to search from
+   * @param types the types to find
+   * @param maxRadius how far (in moves) to search, or {@link #UNBOUNDED}
+   * @return the index ({@code y * width + x}) of the closest matching cell, or -1 if there is none
+   *     within the radius
+   */
+  public int findClosestResource(
+      final int x, final int y, final List<ResourceType> types, final int maxRadius) {
+    for (int i = 0; i < accepted.length; i++) {
+      accepted[i] = false;
+    }
+    for (int i = 0; i < types.size(); i++) {
+      accepted[types.get(i).ordinal()] = true;
+    }
+    return search(x, y, maxRadius, true);
+  }
+
+  /**
+   * Finds the closest cell without a unit.
+   *
+   * @param x the x coordinate to search from
+   * @param y the y coordinate to search from
+   * @param maxRadius how far (in moves) to search, or {@link #UNBOUNDED}
+   * @return the index ({@code y * width + x}) of the closest empty cell, or -1 if there is none
+   *     within the radius
+   */
+  public int findClosestEmpty(final int x, final int y, final int maxRadius) {
+    return search(x, y, maxRadius, false);
+  }
+
+  /**
+   * Finds the closest cells without a unit, in the order successive calls to {@link
+   * #findClosestEmpty(int, int, int)} would find them if each found cell was filled in turn.
+   *
+   * @param found where to put the indices ({@code y * width + x}) of the cells, closest first; as
+   *     many cells as it can hold are looked for
+   * @return how many cells were found, fewer than asked if there are not enough within the radius
+   */
+  public int findClosestEmpty(final int x, final int y, final int maxRadius, final int[] found) {
+    long expandedBefore = expandedNodes;
+    int count = expand(x, y, maxRadius, false, found);
+    TurnMetrics.searched(expandedNodes - expandedBefore);
+    return count;
+  }
+
+  /** Total number of cells dequeued by this engine since it was created. */
+  public long getExpandedNodes() {
+    return expandedNodes;
+  }
+
+  private int search(final int x, final int y, final int maxRadius, final boolean resources) {
+    long expandedBefore = expandedNodes;
+    int count = expand(x, y, maxRadius, resources, closest);
+    TurnMetrics.searched(expandedNodes - expandedBefore);
+    return count == 0 ? -1 : closest[0];
+  }
+
+  /**
+   * Searches breadth first until {@code found} is full. A cell that matches is expanded like any
+   * other, as it would be by a later search once it has been filled.
+   *
+   * @return how many cells were found
+   */
+  private int expand(
+      final int x,
+      final int y,
+      final int maxRadius,
+      final boolean resources,
+      final int[] found) {
+    nextGeneration();
+    originX = Utils.clamp(x - windowRadius, 0, width - windowWidth);
+    originY = Utils.clamp(y - windowRadius, 0, height - windowHeight);
+    int limit = Math.min(maxRadius, windowRadius);
+    head = 0;
+    size = 0;
+    enqueue(x, y);
+    int radius = 0;
+    int levelRemaining = 1;
+    int count = 0;
+    while (size > 0 && count < found.length) {
+      int index = dequeue();
+      expandedNodes++;
+      int cellX = index % width;
+      int cellY = index / width;
+      if (resources ? isResource(cellX, cellY) : storage.getUnit(cellX, cellY) == null) {
+        found[count++] = index;
+        if (count == found.length) break;
+      }
+      if (radius < limit) {
+        if (cellX > originX) enqueue(cellX - 1, cellY);
+        if (cellX < originX + windowWidth - 1) enqueue(cellX + 1, cellY);
+        if (cellY > originY) enqueue(cellX, cellY - 1);
+        if (cellY < originY + windowHeight - 1) enqueue(cellX, cellY + 1);
+      }
+      if (--levelRemaining == 0) {
+        radius++;
+        levelRemaining = size;
+      }
+    }
+    return count;
+  }
+
+  private boolean isResource(final int x, final int y) {
+    return storage.getAmount(x, y) > 0 && accepted[storage.getType(x, y).ordinal()];
+  }
+
+  private void nextGeneration() {
+    if (++generation == 0) {
+      Arrays.fill(stamps, 0);
+      generation = 1;
+    }
+  }
+
+  private void enqueue(final int x, final int y) {
+    int stamp = (y - originY) * windowWidth + x - originX;
+    if (stamps[stamp] == generation) return;
+    stamps[stamp] = generation;
+    queue[(head + size++) % queue.length] = y * width + x;
+  }
+
+  private int dequeue() {
+    int index = queue[head];
+    head = (head + 1) % queue.length;
+    size--;
+    return index;
+  }
+}
@@ -0,0 +1,38 @@
+package strategy.world;
+
+import strategy.producible.unit.Unit;
+
+/**
+ * <b>Backing storage for the cells of a {@link WorldMap}.</b>
+ *
+ * <p>Coordinates passed to a storage are always within bounds: clamping is done by the {@link
+ * WorldMap}. The per-coordinate accessors let hot loops read the grid without going through {@link
+ * Cell} objects.
+ */
+public interface CellStorage {
+  int width();
+
+  int height();
+
+  /**
+   * Sets the initial contents of a cell while the world is being generated. Rows are generated in
+   * parallel, so this may be called concurrently for cells of different rows.
+   */
+  void init(final int x, final int y, final ResourceType type, final int amount);
+
+  Cell getCell(final int x, final int y);
+
+  ResourceType getType(final int x, final int y);
+
+  int getAmount(final int x, final int y);
+
+  void setAmount(final int x, final int y, final int amount);
+
+  Unit getUnit(final int x, final int y);
+
+  /**
+   * Stores a unit in a cell. This bypasses the map's unit registry: game code should go through
+   * {@link Cell#setUnit(Unit)} instead.
+   */
+  void setUnit(final int x, final int y, final Unit unit);
+}
@@ -0,0 +1,53 @@
+package strategy.world;
+
+import java.util.SplittableRandom;
+import strategy.Config;
+import strategy.Utils;
+
+/**
+ * <b>Deterministic generation of the world, one chunk at a time.</b>
+ *
+ * <p>The world is divided in square chunks of {@link Config#CHUNK_SIZE} cells, and each chunk is
+ * drawn from its own random stream, derived from the seed of the world and the coordinates of the
+ * chunk. A chunk is therefore always generated the same, whether the whole world is generated
+ * upfront, in parallel, or chunk by chunk as it is explored.
+ */
+final class ChunkGenerator {
+  private ChunkGenerator() {}
+
+  /** Receives the generated cells. */
+  @FunctionalInterface
+  interface Sink {
+    void init(int x, int y, ResourceType type, int amount);
+  }
+
+  /**
+   * Generates the cells of a chunk that lie within the world.
+   *
+   * @return the amount of resources generated, by type ordinal
+   */
+  static long[] generate(
+      final long seed,
+      final int chunkX,
+      final int chunkY,
+      final int width,
+      final int height,
+      final Sink sink) {
+    long[] generated = new long[ResourceType.values().length];
+    SplittableRandom random = Utils.random(seed, (long) chunkY << 32 | chunkX);
+    int endX = Math.min((chunkX + 1) * Config.CHUNK_SIZE, width);
+    int endY = Math.min((chunkY + 1) * Config.CHUNK_SIZE, height);
+    for (int y = chunkY * Config.CHUNK_SIZE; y < endY; y++) {
+      for (int x = chunkX * Config.CHUNK_SIZE; x < endX; x++) {
+        ResourceType type = ResourceType.getRandomType(random);
+        int amount =
+            random.nextDouble() < type.getSpawnChance()
+                ? random.nextInt(type.getMaxVeinSize())
+                : 0;
+        sink.init(x, y, type, amount);
+        generated[type.ordinal()] += amount;
+      }
+    }
+    return generated;
+  }
+}
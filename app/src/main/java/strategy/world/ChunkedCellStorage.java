@@ -0,0 +1,273 @@
+package strategy.world;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import strategy.Config;
+import strategy.producible.unit.Unit;
+
+/**
+ * <b>Storage generating the world lazily, one chunk at a time, within a memory budget.</b>
+ *
+ * <p>A chunk of {@link Config#CHUNK_SIZE} by {@link Config#CHUNK_SIZE} cells is generated by
+ * {@link ChunkGenerator} the first time one of its cells is accessed. When more than {@code budget}
+ * chunks are loaded, the least recently loaded or accessed chunks without units are evicted:
+ *
+ * <ul>
+ *   <li>an unmodified chunk is simply dropped, and generated again from the seed when needed;
+ *   <li>a modified chunk is spilled as the list of the cells whose amount differs from the
+ *       generated one, and these are applied back when it is generated again.
+ * </ul>
+ *
+ * <p>Only the cells units actually explore are held in memory, so the world can be much larger than
+ * the heap, as long as it has at most {@link Integer#MAX_VALUE} cells. Chunks with units are never
+ * evicted, so the budget may be exceeded when units are spread over more chunks.
+ *
+ * <p>Accesses are synchronized, as loading a chunk mutates the storage even when reading.
+ */
+class ChunkedCellStorage implements CellStorage {
+  private static final ResourceType[] TYPES = ResourceType.values();
+  private static final int SIZE = Config.CHUNK_SIZE;
+
+  private final WorldMap worldMap;
+  private final int width;
+  private final int height;
+  private final long seed;
+  private final int budget;
+  private final int chunksX;
+
+  /** Loaded chunks, by id, from the least to the most recently accessed. */
+  private final LinkedHashMap<Integer, Chunk> loaded = new LinkedHashMap<>(16, 0.75f, true);
+  /** Evicted modified chunks, by id, as pairs of cell offset and amount. */
+  private final Map<Integer, int[]> spilled = new HashMap<>();
+  /** Chunks generated at least once, whose resources were reported to the map. */
+  private final BitSet generated = new BitSet();
+
+  /** Last chunk accessed, to skip the lookup for consecutive accesses to the same chunk. */
+  private int lastId = -1;
+
+  private Chunk last;
+
+  ChunkedCellStorage(
+      final WorldMap worldMap,
+      final int width,
+      final int height,
+      final long seed,
+      final int budget) {
+    if ((long) width * height > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException(
+          "A world can have at most " + Integer.MAX_VALUE + " cells");
+    }
+    this.worldMap = worldMap;
+    this.width = width;
+    this.height = height;
+    this.seed = seed;
+    this.budget = budget;
+    chunksX = (width + SIZE - 1) / SIZE;
+  }
+
+  @Override
+  public int width() {
+    return width;
+  }
+
+  @Override
+  public int height() {
+    return height;
+  }
+
+  /** How many chunks are currently held in memory. */
+  synchronized int getLoadedChunks() {
+    return loaded.size();
+  }
+
+  /** How many evicted chunks are held as their modifications. */
+  synchronized int getSpilledChunks() {
+    return spilled.size();
+  }
+
+  private static int offset(final int x, final int y) {
+    return (y % SIZE) * SIZE + x % SIZE;
+  }
+
+  private Chunk chunk(final int x, final int y) {
+    int id = (y / SIZE) * chunksX + x / SIZE;
+    if (id == lastId) {
+      return last;
+    }
+    Chunk chunk = loaded.get(id);
+    if (chunk == null) {
+      chunk = load(id);
+    }
+    lastId = id;
+    last = chunk;
+    return chunk;
+  }
+
+  private Chunk load(final int id) {
+    Chunk chunk = generate(id);
+    if (!generated.get(id)) {
+      generated.set(id);
+      worldMap.generated(chunk.resources);
+    }
+    int[] changes = spilled.remove(id);
+    if (changes != null) {
+      for (int i = 0; i < changes.length; i += 2) {
+        chunk.amounts[changes[i]] = changes[i + 1];
+      }
+      chunk.modified = true;
+    }
+    loaded.put(id, chunk);
+    evict(id);
+    return chunk;
+  }
+
+  private Chunk generate(final int id) {
+    Chunk chunk = new Chunk();
+    chunk.resources =
+        ChunkGenerator.generate(
+            seed,
+            id % chunksX,
+            id / chunksX,
+            width,
+            height,
+            (x, y, type, amount) -> {
+              chunk.types[offset(x, y)] = (byte) type.ordinal();
+              chunk.amounts[offset(x, y)] = amount;
+            });
+    return chunk;
+  }
+
+  /**
+   * Evicts the least recently accessed chunks without units until the budget is met, sparing the
+   * chunk being loaded and the last one accessed.
+   */
+  private void evict(final int loading) {
+    Iterator<Map.Entry<Integer, Chunk>> iterator = loaded.entrySet().iterator();
+    while (loaded.size() > budget && iterator.hasNext()) {
+      Map.Entry<Integer, Chunk> entry = iterator.next();
+      Chunk chunk = entry.getValue();
+      int id = entry.getKey();
+      if (chunk.occupants > 0 || id == loading || id == lastId) continue;
+      if (chunk.modified) {
+        spill(id, chunk);
+      }
+      iterator.remove();
+    }
+  }
+
+  private void spill(final int id, final Chunk chunk) {
+    int[] original = generate(id).amounts;
+    int count = 0;
+    for (int i = 0; i < original.length; i++) {
+      if (original[i] != chunk.amounts[i]) count++;
+    }
+    int[] changes = new int[count * 2];
+    int next = 0;
+    for (int i = 0; i < original.length; i++) {
+      if (original[i] != chunk.amounts[i]) {
+        changes[next++] = i;
+        changes[next++] = chunk.amounts[i];
+      }
+    }
+    spilled.put(id, changes);
+  }
+
+  @Override
+  public synchronized void init(
+      final int x, final int y, final ResourceType type, final int amount) {
+    Chunk chunk = chunk(x, y);
+    chunk.types[offset(x, y)] = (byte) type.ordinal();
+    chunk.amounts[offset(x, y)] = amount;
+    chunk.modified = true;
+  }
+
+  @Override
+  public Cell getCell(final int x, final int y) {
+    return new ChunkedCell(x, y);
+  }
+
+  @Override
+  public synchronized ResourceType getType(final int x, final int y) {
+    return TYPES[chunk(x, y).types[offset(x, y)]];
+  }
+
+  @Override
+  public synchronized int getAmount(final int x, final int y) {
+    return chunk(x, y).amounts[offset(x, y)];
+  }
+
+  @Override
+  public synchronized void setAmount(final int x, final int y, final int amount) {
+    Chunk chunk = chunk(x, y);
+    chunk.amounts[offset(x, y)] = amount;
+    chunk.modified = true;
+  }
+
+  @Override
+  public synchronized Unit getUnit(final int x, final int y) {
+    Unit[] units = chunk(x, y).units;
+    return units == null ? null : units[offset(x, y)];
+  }
+
+  @Override
+  public synchronized void setUnit(final int x, final int y, final Unit unit) {
+    Chunk chunk = chunk(x, y);
+    if (chunk.units == null) {
+      if (unit == null) return;
+      chunk.units = new Unit[SIZE * SIZE];
+    }
+    int offset = offset(x, y);
+    if (chunk.units[offset] != null) chunk.occupants--;
+    if (unit != null) chunk.occupants++;
+    chunk.units[offset] = unit;
+  }
+
+  /** The cells of one chunk, indexed by {@code (y % SIZE) * SIZE + x % SIZE}. */
+  private static final class Chunk {
+    private final byte[] types = new byte[SIZE * SIZE];
+    private final int[] amounts = new int[SIZE * SIZE];
+    /** Occupants of the cells, allocated when the first unit enters the chunk. */
+    private Unit[] units;
+
+    private int occupants = 0;
+    /** Whether an amount was changed since the chunk was generated. */
+    private boolean modified = false;
+    /** Resources the chunk was generated with, by type ordinal. */
+    private long[] resources;
+  }
+
+  /** A view over one cell of a chunk. */
+  private class ChunkedCell extends Cell {
+    ChunkedCell(final int x, final int y) {
+      super(ChunkedCellStorage.this.worldMap, x, y);
+    }
+
+    @Override
+    public ResourceType getType() {
+      return ChunkedCellStorage.this.getType(getX(), getY());
+    }
+
+    @Override
+    public int getAmount() {
+      return ChunkedCellStorage.this.getAmount(getX(), getY());
+    }
+
+    @Override
+    protected void setAmount(final int amount) {
+      ChunkedCellStorage.this.setAmount(getX(), getY(), amount);
+    }
+
+    @Override
+    public Unit getUnit() {
+      return ChunkedCellStorage.this.getUnit(getX(), getY());
+    }
+
+    @Override
+    protected void storeUnit(final Unit unit) {
+      ChunkedCellStorage.this.setUnit(getX(), getY(), unit);
+    }
+  }
+}
@@ -0,0 +1,195 @@
+package strategy.world;
+
+import java.util.Arrays;
+
+/**
+ * <b>Distance field towards the non-empty cells of a set of resource types.</b>
+ *
+ * <p>For every cell of the map, the field holds the distance (in moves) to the closest non-empty
+ * cell of one of its types, and which cell that is. It is computed with a single multi-source
+ * breadth-first search from all matching cells, so every unit looking for the same types shares
+ * it and finds its target in constant time. Among sources at the same distance, the one with the
+ * lowest index ({@code y * width + x}) is kept, which gives the same answers as {@link
+ * ResourceIndex}.
+ *
+ * <p>When a source is depleted, only the cells that pointed to it are recomputed, starting from
+ * the cells bordering them.
+ */
+public final class DistanceField {
+  private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+  private final CellStorage storage;
+  private final int width;
+  private final int height;
+  /** Bitmask of the ordinals of the types this field points to. */
+  private final int mask;
+
+  private final int[] distances;
+  private final int[] nearest;
+  /** Scratch queue of cell indices, shared by the initial search and repairs. */
+  private final int[] queue;
+  /** Generation at which each cell was last marked as needing a repair. */
+  private final int[] stamps;
+  /**
+   * Scratch seeds of repairs, each a distance in its high half and a cell index in its low half,
+   * grown on demand as the region of a repair has at most four neighbours per cell.
+   */
+  private long[] seeds = new long[16];
+
+  private int generation = 0;
+
+  DistanceField(final CellStorage storage, final int mask) {
+    this.storage = storage;
+    this.mask = mask;
+    width = storage.width();
+    height = storage.height();
+    int size = width * height;
+    distances = new int[size];
+    nearest = new int[size];
+    queue = new int[size];
+    stamps = new int[size];
+    Arrays.fill(distances, UNREACHABLE);
+    Arrays.fill(nearest, -1);
+
+    int tail = 0;
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        if (isSource(x, y)) {
+          int index = y * width + x;
+          distances[index] = 0;
+          nearest[index] = index;
+          queue[tail++] = index;
+        }
+      }
+    }
+    for (int head = 0; head < tail; head++) {
+      tail = relax(queue[head], tail, false);
+    }
+  }
+
+  boolean covers(final ResourceType type) {
+    return (mask & 1 << type.ordinal()) != 0;
+  }
+
+  private boolean isSource(final int x, final int y) {
+    return storage.getAmount(x, y) > 0 && covers(storage.getType(x, y));
+  }
+
+  /**
+   * The closest non-empty cell to a given cell.
+   *
+   * @return the index of the closest matching cell, or -1 if none remains
+   */
+  public int nearest(final int x, final int y) {
+    return nearest[y * width + x];
+  }
+
+  /** The distance to the closest non-empty cell, or {@link Integer#MAX_VALUE} if none remains. */
+  public int distance(final int x, final int y) {
+    return distances[y * width + x];
+  }
+
+  /**
+   * Propagates a cell's distance to its neighbours, enqueuing those it improves.
+   *
+   * @param repairing whether only cells marked for the current repair may be updated
+   * @return the new tail of the queue
+   */
+  private int relax(final int index, int tail, final boolean repairing) {
+    int x = index % width;
+    int y = index / width;
+    if (x > 0) tail = relaxTo(index, index - 1, tail, repairing);
+    if (x < width - 1) tail = relaxTo(index, index + 1, tail, repairing);
+    if (y > 0) tail = relaxTo(index, index - width, tail, repairing);
+    if (y < height - 1) tail = relaxTo(index, index + width, tail, repairing);
+    return tail;
+  }
+
+  private int relaxTo(final int from, final int to, int tail, final boolean repairing) {
+    if (repairing && stamps[to] != generation) return tail;
+    int distance = distances[from] + 1;
+    if (distances[to] > distance) {
+      distances[to] = distance;
+      nearest[to] = nearest[from];
+      queue[tail++] = to;
+    } else if (distances[to] == distance && nearest[from] < nearest[to]) {
+      nearest[to] = nearest[from];
+    }
+    return tail;
+  }
+
+  /** Updates the field after a source cell has been depleted. */
+  void remove(final int x, final int y) {
+    int source = y * width + x;
+    if (nearest[source] != source) return;
+    if (++generation == 0) {
+      Arrays.fill(stamps, 0);
+      generation = 1;
+    }
+
+    // Collect every cell that pointed to the depleted source. They form a connected region, as
+    // each of them was reached from a neighbour pointing to the same source.
+    int size = 0;
+    stamps[source] = generation;
+    queue[size++] = source;
+    for (int head = 0; head < size; head++) {
+      int index = queue[head];
+      int cellX = index % width;
+      int cellY = index / width;
+      if (cellX > 0) size = mark(index - 1, source, size);
+      if (cellX < width - 1) size = mark(index + 1, source, size);
+      if (cellY > 0) size = mark(index - width, source, size);
+      if (cellY < height - 1) size = mark(index + width, source, size);
+    }
+
+    // The cells bordering the region keep valid distances, and seed its recomputation.
+    if (seeds.length < size * 4) {
+      seeds = new long[Math.max(size * 4, seeds.length * 2)];
+    }
+    int seedCount = 0;
+    for (int i = 0; i < size; i++) {
+      int index = queue[i];
+      distances[index] = UNREACHABLE;
+      nearest[index] = -1;
+    }
+    for (int i = 0; i < size; i++) {
+      int index = queue[i];
+      int cellX = index % width;
+      int cellY = index / width;
+      if (cellX > 0) seedCount = seed(index - 1, seedCount);
+      if (cellX < width - 1) seedCount = seed(index + 1, seedCount);
+      if (cellY > 0) seedCount = seed(index - width, seedCount);
+      if (cellY < height - 1) seedCount = seed(index + width, seedCount);
+    }
+    Arrays.sort(seeds, 0, seedCount);
+
+    // Process seeds and newly reached cells in increasing distance, so that every cell at a given
+    // distance is final before the next distance is expanded.
+    int head = 0;
+    int tail = 0;
+    int next = 0;
+    while (next < seedCount || head < tail) {
+      int index;
+      if (head == tail
+          || next < seedCount && (int) (seeds[next] >>> 32) <= distances[queue[head]]) {
+        index = (int) seeds[next++];
+      } else {
+        index = queue[head++];
+      }
+      tail = relax(index, tail, true);
+    }
+  }
+
+  private int mark(final int index, final int source, final int size) {
+    if (stamps[index] == generation || nearest[index] != source) return size;
+    stamps[index] = generation;
+    queue[size] = index;
+    return size + 1;
+  }
+
+  private int seed(final int index, final int count) {
+    if (stamps[index] == generation || distances[index] == UNREACHABLE) return count;
+    seeds[count] = (long) distances[index] << 32 | index;
+    return count + 1;
+  }
+}
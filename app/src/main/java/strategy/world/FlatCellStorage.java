@@ -0,0 +1,155 @@
+package strategy.world;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import strategy.producible.unit.Unit;
+
+/**
+ * <b>Storage packing every tile into parallel primitive arrays.</b>
+ *
+ * <p>Tiles are indexed by {@code y * width + x}. The resource type is stored as its ordinal, and
+ * the occupant as an id into a table of units (0 meaning no unit), so the grid itself holds no
+ * object references. {@link Cell}s returned by {@link #getCell(int, int)} are short-lived views
+ * over these arrays.
+ */
+class FlatCellStorage implements CellStorage {
+  private static final ResourceType[] TYPES = ResourceType.values();
+
+  private final WorldMap worldMap;
+  private final int width;
+  private final int height;
+  private final byte[] types;
+  private final int[] amounts;
+  private final int[] occupants;
+
+  /** Units currently on the map, indexed by occupant id - 1. */
+  private final List<Unit> units = new ArrayList<>();
+  /** Occupant ids that were released and can be reused. */
+  private int[] freeIds = new int[16];
+
+  private int freeCount = 0;
+
+  FlatCellStorage(final WorldMap worldMap, final int width, final int height) {
+    this.worldMap = worldMap;
+    this.width = width;
+    this.height = height;
+    int size = Math.multiplyExact(width, height);
+    types = new byte[size];
+    amounts = new int[size];
+    occupants = new int[size];
+  }
+
+  @Override
+  public int width() {
+    return width;
+  }
+
+  @Override
+  public int height() {
+    return height;
+  }
+
+  private int index(final int x, final int y) {
+    return y * width + x;
+  }
+
+  @Override
+  public void init(final int x, final int y, final ResourceType type, final int amount) {
+    int index = index(x, y);
+    types[index] = (byte) type.ordinal();
+    amounts[index] = amount;
+  }
+
+  /** Copies the amounts of all the cells at once, indexed by {@code y * width + x}. */
+  int[] copyAmounts() {
+    return amounts.clone();
+  }
+
+  @Override
+  public Cell getCell(final int x, final int y) {
+    return new FlatCell(x, y);
+  }
+
+  @Override
+  public ResourceType getType(final int x, final int y) {
+    return TYPES[types[index(x, y)]];
+  }
+
+  @Override
+  public int getAmount(final int x, final int y) {
+    return amounts[index(x, y)];
+  }
+
+  @Override
+  public void setAmount(final int x, final int y, final int amount) {
+    amounts[index(x, y)] = amount;
+  }
+
+  @Override
+  public Unit getUnit(final int x, final int y) {
+    int id = occupants[index(x, y)];
+    return id == 0 ? null : units.get(id - 1);
+  }
+
+  @Override
+  public void setUnit(final int x, final int y, final Unit unit) {
+    int index = index(x, y);
+    int id = occupants[index];
+    if (id != 0) {
+      if (units.get(id - 1) == unit) return;
+      release(id);
+    }
+    occupants[index] = unit == null ? 0 : acquire(unit);
+  }
+
+  private int acquire(final Unit unit) {
+    if (freeCount > 0) {
+      int id = freeIds[--freeCount];
+      units.set(id - 1, unit);
+      return id;
+    }
+    units.add(unit);
+    return units.size();
+  }
+
+  private void release(final int id) {
+    units.set(id - 1, null);
+    if (freeCount == freeIds.length) {
+      freeIds = Arrays.copyOf(freeIds, freeIds.length * 2);
+    }
+    freeIds[freeCount++] = id;
+  }
+
+  /** A view over one tile of the arrays. */
+  private class FlatCell extends Cell {
+    FlatCell(final int x, final int y) {
+      super(FlatCellStorage.this.worldMap, x, y);
+    }
+
+    @Override
+    public ResourceType getType() {
+      return FlatCellStorage.this.getType(getX(), getY());
+    }
+
+    @Override
+    public int getAmount() {
+      return FlatCellStorage.this.getAmount(getX(), getY());
+    }
+
+    @Override
+    protected void setAmount(final int amount) {
+      FlatCellStorage.this.setAmount(getX(), getY(), amount);
+    }
+
+    @Override
+    public Unit getUnit() {
+      return FlatCellStorage.this.getUnit(getX(), getY());
+    }
+
+    @Override
+    protected void storeUnit(final Unit unit) {
+      FlatCellStorage.this.setUnit(getX(), getY(), unit);
+    }
+  }
+}
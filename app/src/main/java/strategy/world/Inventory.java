@@ -1,45 +1,97 @@
 package strategy.world;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
-
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import org.jetbrains.annotations.NotNull;
 import strategy.building.IBuilding;
+import strategy.building.ProductionScheduler;
 
 /**
  * Singleton class that represents the inventory of the player.
  *
- * <p>The inventory is a map of {@link ResourceType}s to the amount of that resource the player has.
+ * <p>The inventory holds, for each {@link ResourceType}, the amount of that resource the player
+ * has. It may be shared between threads: amounts are atomic counters indexed by the ordinal of
+ * their type, and spending goes through {@link #tryRemoveResources(ResourceType, int)}, which
+ * checks and withdraws in one step so that two consumers can never spend the same resources.
+ * Adding resources wakes the buildings that lacked them, see {@link ProductionScheduler}, so only
+ * the thread playing the game adds resources.
  */
 public class Inventory {
-  private final Map<ResourceType, Integer> resources;
+  private static final ResourceType[] TYPES = ResourceType.values();
+
+  private final AtomicIntegerArray resources;
   private final List<IBuilding> buildings;
+  private final ProductionScheduler scheduler = new ProductionScheduler();
 
   public Inventory() {
-    this.resources = new HashMap<>();
-    this.buildings = new ArrayList<>();
+    this.resources = new AtomicIntegerArray(TYPES.length);
+    this.buildings = new CopyOnWriteArrayList<>();
   }
 
   public void addResources(final ResourceType type, final int amount) {
-    resources.put(type, resources.getOrDefault(type, 0) + amount);
+    resources.addAndGet(type.ordinal(), amount);
+    scheduler.restocked(type);
   }
 
+  /** Removes up to {@code amount} of a resource, stopping at zero. */
   public void removeResources(final ResourceType type, final int amount) {
-    resources.put(type, Math.max(resources.getOrDefault(type, 0) - amount, 0));
+    resources.updateAndGet(type.ordinal(), current -> Math.max(current - amount, 0));
   }
 
   public void removeResources(final @NotNull Map<ResourceType, Integer> resources) {
     resources.forEach(this::removeResources);
   }
 
+  /**
+   * Removes {@code amount} of a resource if the inventory holds that much.
+   *
+   * @return whether the resources were removed; if not, the inventory is left unchanged.
+   */
+  public boolean tryRemoveResources(final ResourceType type, final int amount) {
+    int index = type.ordinal();
+    int current;
+    do {
+      current = resources.get(index);
+      if (current < amount) return false;
+    } while (!resources.compareAndSet(index, current, current - amount));
+    return true;
+  }
+
+  /**
+   * Removes all the given resources if the inventory holds all of them.
+   *
+   * <p>Resources are withdrawn one type after the other, and those already withdrawn are put back
+   * if one is missing, so a cost is either paid in full or not at all.
+   *
+   * @return whether the resources were removed.
+   */
+  public boolean tryRemoveResources(final @NotNull Map<ResourceType, Integer> resources) {
+    int[] removed = new int[TYPES.length];
+    for (Map.Entry<ResourceType, Integer> entry : resources.entrySet()) {
+      if (!tryRemoveResources(entry.getKey(), entry.getValue())) {
+        for (int i = 0; i < removed.length; i++) {
+          if (removed[i] != 0) {
+            this.resources.addAndGet(i, removed[i]);
+          }
+        }
+        return false;
+      }
+      removed[entry.getKey().ordinal()] += entry.getValue();
+    }
+    return true;
+  }
+
   public int getResources(final ResourceType type) {
-    return resources.getOrDefault(type, 0);
+    return resources.get(type.ordinal());
   }
 
   public boolean containsResources(final ResourceType type, final int amount) {
-    return resources.getOrDefault(type, 0) >= amount;
+    return getResources(type) >= amount;
   }
 
   public boolean containsResources(final @NotNull Map<ResourceType, Integer> resources) {
@@ -47,10 +99,87 @@ public class Inventory {
         .allMatch(entry -> containsResources(entry.getKey(), entry.getValue()));
   }
 
+  /** Gets a resource the inventory holds less of than a cost, or null if it holds enough of all. */
+  public ResourceType findShortage(final @NotNull Map<ResourceType, Integer> resources) {
+    for (Map.Entry<ResourceType, Integer> entry : resources.entrySet()) {
+      if (!containsResources(entry.getKey(), entry.getValue())) return entry.getKey();
+    }
+    return null;
+  }
+
   public void addBuilding(final IBuilding building) {
     buildings.add(building);
+    scheduler.add(building);
+  }
+
+  /**
+   * Plays a turn of the buildings, waking only those due to produce, see {@link
+   * ProductionScheduler}.
+   */
+  public void produce(final WorldMap worldMap) {
+    scheduler.tick(worldMap, this);
+  }
+
+  /** Gets the number of turns the buildings played, which stops with the game. */
+  public int getProductionTurns() {
+    return scheduler.getTurn();
+  }
+
+  /**
+   * Starts or stops keeping the buildings that produced or were added, see {@link
+   * #takeChangedBuildings()}.
+   */
+  public void setRecordingChanges(final boolean recording) {
+    scheduler.setRecordingChanges(recording);
+  }
+
+  /**
+   * Gets the positions, among {@link #getBuildings()}, of the buildings that produced or were added
+   * since the last call, while recording, see {@link ProductionScheduler#takeChanged()}.
+   */
+  public int[] takeChangedBuildings() {
+    return scheduler.takeChanged();
+  }
+
+  /**
+   * Catches the buildings up on the turns they waited through, so that their statuses read as of
+   * the last turn played.
+   */
+  public void syncBuildings() {
+    scheduler.sync();
+  }
+
+  /** Writes the resources and buildings to a snapshot. */
+  public void write(final DataOutput out) throws IOException {
+    scheduler.sync();
+    out.writeByte(TYPES.length);
+    for (int i = 0; i < TYPES.length; i++) {
+      out.writeInt(resources.get(i));
+    }
+    out.writeInt(buildings.size());
+    for (IBuilding building : buildings) {
+      building.write(out);
+    }
+  }
+
+  /** Reads an inventory written by {@link #write(DataOutput)}. */
+  public static Inventory read(final DataInput in) throws IOException {
+    Inventory inventory = new Inventory();
+    int types = in.readUnsignedByte();
+    if (types > TYPES.length) {
+      throw new IOException("Corrupt inventory: " + types + " resource types");
+    }
+    for (int i = 0; i < types; i++) {
+      inventory.resources.set(i, in.readInt());
+    }
+    int buildings = in.readInt();
+    for (int i = 0; i < buildings; i++) {
+      inventory.addBuilding(IBuilding.read(in));
+    }
+    return inventory;
   }
 
+  /** Gets the buildings of the player; the list may be iterated while buildings are added. */
   public List<IBuilding> getBuildings() {
     return buildings;
   }
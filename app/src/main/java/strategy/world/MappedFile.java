@@ -0,0 +1,159 @@
+package strategy.world;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import strategy.Config;
+
+/**
+ * <b>A file mapped in memory, in segments of {@link Config#SNAPSHOT_SEGMENT_SIZE} bytes.</b>
+ *
+ * <p>A single mapping is limited to 2 GiB, so larger files are mapped as several segments and
+ * addressed with {@code long} offsets. Numbers are little-endian. Reads and writes are absolute, so
+ * separate ranges of the file may be accessed from several threads at once. Numbers must start at
+ * an offset that is a multiple of their size, so that none of them spans two segments. Accessing
+ * bytes past the end of the file throws an {@link IndexOutOfBoundsException}.
+ */
+public final class MappedFile implements Closeable {
+  private static final long SEGMENT = Config.SNAPSHOT_SEGMENT_SIZE;
+
+  private final FileChannel channel;
+  private final MappedByteBuffer[] segments;
+  private final long size;
+
+  private MappedFile(final FileChannel channel, final FileChannel.MapMode mode, final long size)
+      throws IOException {
+    this.channel = channel;
+    this.size = size;
+    segments = new MappedByteBuffer[(int) ((size + SEGMENT - 1) / SEGMENT)];
+    for (int i = 0; i < segments.length; i++) {
+      long start = i * SEGMENT;
+      segments[i] = channel.map(mode, start, Math.min(SEGMENT, size - start));
+      segments[i].order(ByteOrder.LITTLE_ENDIAN);
+    }
+  }
+
+  /** Creates, or truncates, a file of the given size and maps it to be written. */
+  public static MappedFile create(final Path path, final long size) throws IOException {
+    FileChannel channel =
+        FileChannel.open(
+            path,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+    return new MappedFile(channel, FileChannel.MapMode.READ_WRITE, size);
+  }
+
+  /** Maps a whole file to be read. */
+  public static MappedFile open(final Path path) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    return new MappedFile(channel, FileChannel.MapMode.READ_ONLY, channel.size());
+  }
+
+  public long size() {
+    return size;
+  }
+
+  /** Rounds an offset up to the next multiple of 8. */
+  public static long align(final long offset) {
+    return (offset + 7) & ~7L;
+  }
+
+  /** Checks that the {@code length} bytes from {@code offset} are within the file. */
+  private void check(final long offset, final long length) {
+    if (offset < 0 || length < 0 || offset > size - length) {
+      throw new IndexOutOfBoundsException(
+          length + " bytes at " + offset + " are outside a file of " + size + " bytes");
+    }
+  }
+
+  /** A view of the segment holding {@code offset}, positioned at it. */
+  private ByteBuffer at(final long offset) {
+    ByteBuffer segment = segments[(int) (offset / SEGMENT)].duplicate();
+    segment.order(ByteOrder.LITTLE_ENDIAN);
+    segment.position((int) (offset % SEGMENT));
+    return segment;
+  }
+
+  public void putInt(final long offset, final int value) {
+    check(offset, 4);
+    at(offset).putInt(value);
+  }
+
+  public int getInt(final long offset) {
+    check(offset, 4);
+    return at(offset).getInt();
+  }
+
+  public void putLong(final long offset, final long value) {
+    check(offset, 8);
+    at(offset).putLong(value);
+  }
+
+  public long getLong(final long offset) {
+    check(offset, 8);
+    return at(offset).getLong();
+  }
+
+  public void putBytes(final long offset, final byte[] source, final int from, final int length) {
+    check(offset, length);
+    int done = 0;
+    while (done < length) {
+      ByteBuffer segment = at(offset + done);
+      int count = Math.min(length - done, segment.remaining());
+      segment.put(source, from + done, count);
+      done += count;
+    }
+  }
+
+  public void getBytes(final long offset, final byte[] target, final int from, final int length) {
+    check(offset, length);
+    int done = 0;
+    while (done < length) {
+      ByteBuffer segment = at(offset + done);
+      int count = Math.min(length - done, segment.remaining());
+      segment.get(target, from + done, count);
+      done += count;
+    }
+  }
+
+  public void putInts(final long offset, final int[] source, final int from, final int length) {
+    check(offset, 4L * length);
+    int done = 0;
+    while (done < length) {
+      ByteBuffer segment = at(offset + 4L * done);
+      int count = Math.min(length - done, segment.remaining() / 4);
+      segment.asIntBuffer().put(source, from + done, count);
+      done += count;
+    }
+  }
+
+  public void getInts(final long offset, final int[] target, final int from, final int length) {
+    check(offset, 4L * length);
+    int done = 0;
+    while (done < length) {
+      ByteBuffer segment = at(offset + 4L * done);
+      int count = Math.min(length - done, segment.remaining() / 4);
+      segment.asIntBuffer().get(target, from + done, count);
+      done += count;
+    }
+  }
+
+  /** Writes what was put in the file to the storage device. */
+  public void force() {
+    for (MappedByteBuffer segment : segments) {
+      segment.force();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
@@ -0,0 +1,116 @@
+package strategy.world;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import strategy.producible.unit.Unit;
+
+/**
+ * <b>Storage keeping one heap {@link Cell} object per tile.</b>
+ *
+ * <p>Cells are kept in a list of rows, and each cell holds its own resource type, amount and unit.
+ */
+class ObjectCellStorage implements CellStorage {
+  private final WorldMap worldMap;
+  private final int width;
+  private final int height;
+  private final List<List<Cell>> cells;
+
+  ObjectCellStorage(final WorldMap worldMap, final int width, final int height) {
+    this.worldMap = worldMap;
+    this.width = width;
+    this.height = height;
+    cells = new ArrayList<>(height);
+    for (int i = 0; i < height; i++) {
+      cells.add(new ArrayList<>(Collections.nCopies(width, null)));
+    }
+  }
+
+  @Override
+  public int width() {
+    return width;
+  }
+
+  @Override
+  public int height() {
+    return height;
+  }
+
+  @Override
+  public void init(final int x, final int y, final ResourceType type, final int amount) {
+    cells.get(y).set(x, new ObjectCell(worldMap, x, y, type, amount));
+  }
+
+  @Override
+  public Cell getCell(final int x, final int y) {
+    return cells.get(y).get(x);
+  }
+
+  @Override
+  public ResourceType getType(final int x, final int y) {
+    return getCell(x, y).getType();
+  }
+
+  @Override
+  public int getAmount(final int x, final int y) {
+    return getCell(x, y).getAmount();
+  }
+
+  @Override
+  public void setAmount(final int x, final int y, final int amount) {
+    getCell(x, y).setAmount(amount);
+  }
+
+  @Override
+  public Unit getUnit(final int x, final int y) {
+    return getCell(x, y).getUnit();
+  }
+
+  @Override
+  public void setUnit(final int x, final int y, final Unit unit) {
+    ((ObjectCell) getCell(x, y)).storeUnit(unit);
+  }
+
+  /** A cell holding its own contents. */
+  private static class ObjectCell extends Cell {
+    private final ResourceType type;
+    private int amount;
+    private Unit unit;
+
+    ObjectCell(
+        final WorldMap worldMap,
+        final int x,
+        final int y,
+        final ResourceType type,
+        final int amount) {
+      super(worldMap, x, y);
+      this.type = type;
+      this.amount = amount;
+    }
+
+    @Override
+    public ResourceType getType() {
+      return type;
+    }
+
+    @Override
+    public int getAmount() {
+      return amount;
+    }
+
+    @Override
+    protected void setAmount(final int amount) {
+      this.amount = amount;
+    }
+
+    @Override
+    public Unit getUnit() {
+      return unit;
+    }
+
+    @Override
+    protected void storeUnit(final Unit unit) {
+      this.unit = unit;
+    }
+  }
+}
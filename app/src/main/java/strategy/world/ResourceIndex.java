@@ -0,0 +1,155 @@
+package strategy.world;
+
+import java.util.List;
+import java.util.stream.IntStream;
+import strategy.Config;
+import strategy.metrics.TurnMetrics;
+
+/**
+ * <b>Spatial index of the non-empty cells of each {@link ResourceType}.</b>
+ *
+ * <p>The map is divided in square buckets of {@link Config#RESOURCE_INDEX_BUCKET_SIZE} cells, and
+ * the index counts, for every type, how many non-empty cells of that type each bucket holds.
+ * Nearest-neighbour queries walk the buckets in rings around the starting point, only scanning
+ * buckets that hold a matching cell, and stop as soon as no further ring can hold a closer one.
+ *
+ * <p>Distances are in moves (Manhattan distance), the same as a breadth-first search over the
+ * grid. Among cells at the same distance, the one with the lowest index ({@code y * width + x}) is
+ * returned.
+ *
+ * <p>Queries do not modify the index, so they may run concurrently as long as no cell is mined.
+ */
+public final class ResourceIndex {
+  private static final ResourceType[] TYPES = ResourceType.values();
+
+  private final CellStorage storage;
+  private final int width;
+  private final int height;
+  private final int bucketSize;
+  private final int bucketsX;
+  private final int bucketsY;
+  /** Non-empty cells per type ordinal, then per bucket. */
+  private final int[][] counts;
+  /** Non-empty cells per type ordinal. */
+  private final int[] totals;
+
+  ResourceIndex(final CellStorage storage) {
+    this.storage = storage;
+    width = storage.width();
+    height = storage.height();
+    bucketSize = Config.RESOURCE_INDEX_BUCKET_SIZE;
+    bucketsX = (width + bucketSize - 1) / bucketSize;
+    bucketsY = (height + bucketSize - 1) / bucketSize;
+    counts = new int[TYPES.length][bucketsX * bucketsY];
+    totals = new int[TYPES.length];
+    IntStream.range(0, bucketsY).parallel().forEach(this::countBucketRow);
+    for (int type = 0; type < TYPES.length; type++) {
+      for (int count : counts[type]) {
+        totals[type] += count;
+      }
+    }
+  }
+
+  /** Counts the non-empty cells of a row of buckets; rows of buckets can be counted in parallel. */
+  private void countBucketRow(final int bucketY) {
+    int end = Math.min((bucketY + 1) * bucketSize, height);
+    for (int y = bucketY * bucketSize; y < end; y++) {
+      for (int x = 0; x < width; x++) {
+        if (storage.getAmount(x, y) > 0) {
+          counts[storage.getType(x, y).ordinal()][bucket(x, y)]++;
+        }
+      }
+    }
+  }
+
+  private int bucket(final int x, final int y) {
+    return (y / bucketSize) * bucketsX + x / bucketSize;
+  }
+
+  /** Removes a cell that has just been depleted from the index. */
+  void remove(final int x, final int y, final ResourceType type) {
+    counts[type.ordinal()][bucket(x, y)]--;
+    totals[type.ordinal()]--;
+  }
+
+  /** How many non-empty cells of the given type remain on the map. */
+  public int count(final ResourceType type) {
+    return totals[type.ordinal()];
+  }
+
+  /**
+   * Finds the closest non-empty cell of one of the given types.
+   *
+   * @param x the x coordinate to search from
+   * @param y the y coordinate to search from
+   * @param types the types to find
+   * @param maxRadius how far (in moves) to search, or {@link CellSearch#UNBOUNDED}
+   * @return the index ({@code y * width + x}) of the closest matching cell, or -1 if there is none
+   *     within the radius
+   */
+  public int findClosest(
+      final int x, final int y, final List<ResourceType> types, final int maxRadius) {
+    int accepted = ResourceType.mask(types);
+    int remaining = 0;
+    for (int type = 0; type < TYPES.length; type++) {
+      if ((accepted & 1 << type) != 0) remaining += totals[type];
+    }
+    if (remaining == 0) return -1;
+
+    int originX = x / bucketSize;
+    int originY = y / bucketSize;
+    int maxRing =
+        Math.max(
+            Math.max(originX, bucketsX - 1 - originX), Math.max(originY, bucketsY - 1 - originY));
+    int best = -1;
+    int bestDistance = maxRadius;
+    long examined = 0;
+    for (int ring = 0; ring <= maxRing; ring++) {
+      // Every cell of this ring is at least this far away.
+      long ringDistance = ring == 0 ? 0 : (long) (ring - 1) * bucketSize + 1;
+      if (ringDistance > bestDistance) break;
+      for (int by = originY - ring; by <= originY + ring; by++) {
+        if (by < 0 || by >= bucketsY) continue;
+        boolean edge = by == originY - ring || by == originY + ring;
+        int step = edge ? 1 : 2 * ring;
+        for (int bx = originX - ring; bx <= originX + ring; bx += step) {
+          if (bx < 0 || bx >= bucketsX || !holds(accepted, by * bucketsX + bx)) continue;
+          int minX = bx * bucketSize;
+          int minY = by * bucketSize;
+          int maxX = Math.min(minX + bucketSize, width) - 1;
+          int maxY = Math.min(minY + bucketSize, height) - 1;
+          int bucketDistance = gap(x, minX, maxX) + gap(y, minY, maxY);
+          if (bucketDistance > bestDistance) continue;
+          for (int cy = minY; cy <= maxY; cy++) {
+            for (int cx = minX; cx <= maxX; cx++) {
+              examined++;
+              int distance = Math.abs(cx - x) + Math.abs(cy - y);
+              if (distance > bestDistance) continue;
+              int index = cy * width + cx;
+              if (distance == bestDistance && best >= 0 && index > best) continue;
+              if (storage.getAmount(cx, cy) > 0
+                  && (accepted & 1 << storage.getType(cx, cy).ordinal()) != 0) {
+                best = index;
+                bestDistance = distance;
+              }
+            }
+          }
+        }
+      }
+    }
+    TurnMetrics.searched(examined);
+    return best;
+  }
+
+  private boolean holds(final int accepted, final int bucket) {
+    for (int type = 0; type < TYPES.length; type++) {
+      if ((accepted & 1 << type) != 0 && counts[type][bucket] > 0) return true;
+    }
+    return false;
+  }
+
+  /** Distance from a coordinate to the closest coordinate of a range. */
+  private static int gap(final int value, final int min, final int max) {
+    return value < min ? min - value : value > max ? value - max : 0;
+  }
+}
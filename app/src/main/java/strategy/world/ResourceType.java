@@ -1,5 +1,10 @@
 package strategy.world;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+import java.util.SplittableRandom;
 import org.jetbrains.annotations.Contract;
 import strategy.Config;
 
@@ -23,6 +28,8 @@ public enum ResourceType {
       Config.RESOURCE_FOOD_SPAWN_CHANCE,
       Config.RESOURCE_FOOD_MAX_VEIN_SIZE);
 
+  private static final ResourceType[] TYPES = values();
+
   private final double spawnChance;
   private final int maxVeinSize;
   private final char symbol;
@@ -33,8 +40,52 @@ public enum ResourceType {
     symbol = name().charAt(0);
   }
 
-  public static ResourceType getRandomType() {
-    return values()[(int) (Math.random() * values().length)];
+  /** Bit of this type in a bitmask of types, see {@link #mask(List)}. */
+  public int bit() {
+    return 1 << ordinal();
+  }
+
+  /** Bitmask of the given types, with the bit of each type set. */
+  public static int mask(final List<ResourceType> types) {
+    int mask = 0;
+    for (int i = 0; i < types.size(); i++) {
+      mask |= types.get(i).bit();
+    }
+    return mask;
+  }
+
+  public static ResourceType getRandomType(final SplittableRandom random) {
+    return values()[random.nextInt(values().length)];
+  }
+
+  /** Writes a list of types to a snapshot, as their ordinals. */
+  public static void write(final DataOutput out, final List<ResourceType> types)
+      throws IOException {
+    out.writeByte(types.size());
+    for (ResourceType type : types) {
+      out.writeByte(type.ordinal());
+    }
+  }
+
+  /** Reads a list of types written by {@link #write(DataOutput, List)}. */
+  public static List<ResourceType> readList(final DataInput in) throws IOException {
+    ResourceType[] types = new ResourceType[in.readUnsignedByte()];
+    for (int i = 0; i < types.length; i++) {
+      types[i] = of(in.readUnsignedByte());
+    }
+    return List.of(types);
+  }
+
+  /**
+   * Gets the type of an ordinal read from a snapshot.
+   *
+   * @throws IOException if no type has this ordinal
+   */
+  public static ResourceType of(final int ordinal) throws IOException {
+    if (ordinal < 0 || ordinal >= TYPES.length) {
+      throw new IOException("Corrupt resource type " + ordinal);
+    }
+    return TYPES[ordinal];
   }
 
   @Contract(pure = true)
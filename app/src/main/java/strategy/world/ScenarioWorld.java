@@ -0,0 +1,270 @@
+package strategy.world;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import strategy.Config;
+
+/**
+ * <b>The cells of a world in a scenario, as runs of cells with the same contents.</b>
+ *
+ * <p>Pre-authored worlds hold large areas of the same resource, or of nothing at all, so cells are
+ * run-length encoded: cells are taken by {@code y * width + x}, and each run of cells holding the
+ * same type and amount is written as its length, the ordinal of the type as a byte and the amount,
+ * the length and amount as unsigned varints of 7 bits per byte, lowest first. A world of empty
+ * cells takes a few bytes per row.
+ *
+ * <p>In a scenario, a world is laid out as its width and height, then for each band of {@link
+ * Config#CHUNK_SIZE} rows, the offset of its runs from the start of the world, and the offset of
+ * the end of the last band. Runs never cross from one band to the next, so that bands are decoded
+ * in parallel. Each band is streamed from the mapped file through a small buffer straight into the
+ * storage of the world, without any object per cell or run.
+ */
+public final class ScenarioWorld {
+  private static final ResourceType[] TYPES = ResourceType.values();
+  private static final int BAND_HEIGHT = Config.CHUNK_SIZE;
+  /** Bytes of runs read from the file at once. */
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final int width;
+  private final int height;
+  /** The runs of each band. */
+  private final byte[][] bands;
+
+  private ScenarioWorld(final int width, final int height, final byte[][] bands) {
+    this.width = width;
+    this.height = height;
+    this.bands = bands;
+  }
+
+  /** Encodes the cells of a world, by bands of rows in parallel. */
+  public static ScenarioWorld encode(final WorldMap worldMap) {
+    CellStorage storage = worldMap.storage();
+    int width = worldMap.width();
+    int height = worldMap.height();
+    byte[][] bands = new byte[bandCount(height)][];
+    IntStream.range(0, bands.length)
+        .parallel()
+        .forEach(band -> bands[band] = encodeBand(storage, width, height, band));
+    return new ScenarioWorld(width, height, bands);
+  }
+
+  private static int bandCount(final int height) {
+    return (height + BAND_HEIGHT - 1) / BAND_HEIGHT;
+  }
+
+  private static byte[] encodeBand(
+      final CellStorage storage, final int width, final int height, final int band) {
+    Runs runs = new Runs();
+    int start = band * BAND_HEIGHT;
+    int end = Math.min(start + BAND_HEIGHT, height);
+    ResourceType type = null;
+    int amount = 0;
+    int length = 0;
+    for (int y = start; y < end; y++) {
+      for (int x = 0; x < width; x++) {
+        ResourceType cellType = storage.getType(x, y);
+        int cellAmount = storage.getAmount(x, y);
+        if (cellType == type && cellAmount == amount) {
+          length++;
+          continue;
+        }
+        if (length > 0) runs.add(length, type, amount);
+        type = cellType;
+        amount = cellAmount;
+        length = 1;
+      }
+    }
+    if (length > 0) runs.add(length, type, amount);
+    return runs.toByteArray();
+  }
+
+  private long tableSize() {
+    return 8 + 8L * (bands.length + 1);
+  }
+
+  /** Size of the world in a scenario. */
+  public long size() {
+    long size = tableSize();
+    for (byte[] band : bands) {
+      size += band.length;
+    }
+    return size;
+  }
+
+  /** Writes the world from {@code offset}. */
+  public void write(final MappedFile file, final long offset) {
+    file.putInt(offset, width);
+    file.putInt(offset + 4, height);
+    long position = tableSize();
+    for (int band = 0; band < bands.length; band++) {
+      file.putLong(offset + 8 + 8L * band, position);
+      file.putBytes(offset + position, bands[band], 0, bands[band].length);
+      position += bands[band].length;
+    }
+    file.putLong(offset + 8 + 8L * bands.length, position);
+  }
+
+  /**
+   * Reads a world written from {@code offset}, with no units. Its cells are decoded by bands of
+   * rows in parallel.
+   */
+  public static WorldMap read(
+      final MappedFile file, final long offset, final WorldMap.Layout layout, final long seed)
+      throws IOException {
+    if (layout == WorldMap.Layout.CHUNKED) {
+      throw new IOException("Scenarios cannot be loaded into a chunked world");
+    }
+    if (offset > file.size() - 8) {
+      throw new IOException("Corrupt scenario: no world");
+    }
+    int width = file.getInt(offset);
+    int height = file.getInt(offset + 4);
+    if (width <= 0 || height <= 0) {
+      throw new IOException("Invalid scenario size " + width + "x" + height);
+    }
+    long[] table = new long[bandCount(height) + 1];
+    if (offset + 8 + 8L * table.length > file.size()) {
+      throw new IOException("Corrupt scenario: band offsets past the end of the file");
+    }
+    for (int band = 0; band < table.length; band++) {
+      table[band] = offset + file.getLong(offset + 8 + 8L * band);
+      if (table[band] < offset
+          || table[band] > file.size()
+          || band > 0 && table[band] < table[band - 1]) {
+        throw new IOException("Corrupt scenario: invalid offset of band " + band);
+      }
+    }
+    try {
+      return new WorldMap(width, height, layout, seed, storage -> readCells(file, table, storage));
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /** Fills the storage, and returns the resources read by type ordinal. */
+  private static long[] readCells(
+      final MappedFile file, final long[] table, final CellStorage storage) {
+    return IntStream.range(0, table.length - 1)
+        .parallel()
+        .mapToObj(band -> readBand(file, table[band], table[band + 1], storage, band))
+        .reduce(
+            new long[TYPES.length],
+            (a, b) -> {
+              long[] sum = new long[TYPES.length];
+              for (int i = 0; i < sum.length; i++) {
+                sum[i] = a[i] + b[i];
+              }
+              return sum;
+            });
+  }
+
+  private static long[] readBand(
+      final MappedFile file,
+      final long from,
+      final long to,
+      final CellStorage storage,
+      final int band) {
+    long[] resources = new long[TYPES.length];
+    int width = storage.width();
+    int start = band * BAND_HEIGHT;
+    int cells = Math.min(BAND_HEIGHT, storage.height() - start) * width;
+    Decoder decoder = new Decoder(file, from, to);
+    int cell = 0;
+    while (cell < cells) {
+      int length = decoder.varint();
+      int ordinal = decoder.next();
+      int amount = decoder.varint();
+      if (length <= 0 || length > cells - cell || ordinal >= TYPES.length || amount < 0) {
+        throw corrupt(band);
+      }
+      ResourceType type = TYPES[ordinal];
+      for (int end = cell + length; cell < end; cell++) {
+        storage.init(cell % width, start + cell / width, type, amount);
+      }
+      resources[ordinal] += (long) length * amount;
+    }
+    if (!decoder.isDone()) throw corrupt(band);
+    return resources;
+  }
+
+  private static UncheckedIOException corrupt(final int band) {
+    return new UncheckedIOException(
+        new IOException("Corrupt scenario: invalid runs in band " + band));
+  }
+
+  /** Runs of a band being encoded. */
+  private static final class Runs {
+    private byte[] bytes = new byte[256];
+    private int size = 0;
+
+    private void add(final int length, final ResourceType type, final int amount) {
+      varint(length);
+      put(type.ordinal());
+      varint(amount);
+    }
+
+    private void varint(final int value) {
+      int rest = value;
+      while ((rest & ~0x7f) != 0) {
+        put(rest & 0x7f | 0x80);
+        rest >>>= 7;
+      }
+      put(rest);
+    }
+
+    private void put(final int value) {
+      if (size == bytes.length) {
+        bytes = Arrays.copyOf(bytes, size * 2);
+      }
+      bytes[size++] = (byte) value;
+    }
+
+    private byte[] toByteArray() {
+      return Arrays.copyOf(bytes, size);
+    }
+  }
+
+  /** Streams the runs of a band from the file, a buffer at a time. */
+  private static final class Decoder {
+    private final MappedFile file;
+    private final byte[] buffer;
+    private long position;
+    private final long end;
+    private int index = 0;
+    private int limit = 0;
+
+    private Decoder(final MappedFile file, final long from, final long to) {
+      this.file = file;
+      position = from;
+      end = to;
+      buffer = new byte[(int) Math.min(BUFFER_SIZE, Math.max(to - from, 1))];
+    }
+
+    private boolean isDone() {
+      return index == limit && position == end;
+    }
+
+    private int next() {
+      if (index == limit) {
+        if (position == end) throw new UncheckedIOException(new IOException("Truncated scenario"));
+        limit = (int) Math.min(buffer.length, end - position);
+        file.getBytes(position, buffer, 0, limit);
+        position += limit;
+        index = 0;
+      }
+      return buffer[index++] & 0xff;
+    }
+
+    private int varint() {
+      int value = 0;
+      for (int shift = 0; shift < 32; shift += 7) {
+        int part = next();
+        value |= (part & 0x7f) << shift;
+        if ((part & 0x80) == 0) return value;
+      }
+      throw new UncheckedIOException(new IOException("Corrupt scenario: varint too long"));
+    }
+  }
+}
@@ -0,0 +1,93 @@
+package strategy.world;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import strategy.producible.Tool;
+import strategy.producible.unit.Unit;
+
+/**
+ * <b>Index of the units a tool factory may equip, see {@link WorldMap#findToolCandidate(List)}.</b>
+ *
+ * <p>Units without a tool are queued by {@link Unit#getSequence()}, and units with a tool are kept in
+ * a heap by efficiency for each set of targets. Entries are stamped with the {@link
+ * Unit#getToolVersion()} of their unit, and are not removed when the unit is given another tool:
+ * they are dropped when they reach the head of their queue with an older version, so that giving a
+ * tool costs a logarithmic push, and each unit has a single live entry. Units that left the map,
+ * which only happens when there is no room left for them, are dropped in the same way.
+ */
+final class ToolIndex {
+  private static final Comparator<Entry> BY_SEQUENCE =
+      Comparator.comparingLong(entry -> entry.unit.getSequence());
+  private static final Comparator<Entry> BY_EFFICIENCY =
+      Comparator.<Entry>comparingInt(entry -> entry.tool.efficiency())
+          .thenComparingLong(entry -> entry.unit.getSequence());
+
+  private final CellStorage storage;
+  private final PriorityQueue<Entry> toolless = new PriorityQueue<>(BY_SEQUENCE);
+  /** Units with a tool, by bitmask of the tool's targets. */
+  private final Map<Integer, PriorityQueue<Entry>> equipped = new HashMap<>();
+
+  ToolIndex(final CellStorage storage) {
+    this.storage = storage;
+  }
+
+  /** Indexes a unit entering the map. */
+  void add(final Unit unit) {
+    toolChanged(unit);
+  }
+
+  /** Indexes a unit of the map under its current tool. */
+  void toolChanged(final Unit unit) {
+    Tool tool = unit.getTool();
+    Entry entry = new Entry(unit, tool, unit.getToolVersion());
+    if (tool == null) {
+      toolless.add(entry);
+    } else {
+      equipped.computeIfAbsent(tool.mask(), key -> new PriorityQueue<>(BY_EFFICIENCY)).add(entry);
+    }
+  }
+
+  /**
+   * Finds the unit without a tool that entered the map first, or if all units have one, the unit
+   * with the least efficient tool mining exactly the given targets.
+   *
+   * @return the unit, or null if there is none
+   */
+  Unit candidate(final List<ResourceType> targets) {
+    while (!toolless.isEmpty()) {
+      Entry entry = toolless.peek();
+      if (entry.isLive()) return entry.unit;
+      toolless.poll();
+    }
+    PriorityQueue<Entry> entries = equipped.get(ResourceType.mask(targets));
+    if (entries == null) return null;
+    while (!entries.isEmpty()) {
+      Entry entry = entries.peek();
+      if (entry.isLive()) return entry.unit;
+      entries.poll();
+    }
+    return null;
+  }
+
+  /** A unit under one of its tools, or under no tool. */
+  private final class Entry {
+    private final Unit unit;
+    private final Tool tool;
+    private final int version;
+
+    private Entry(final Unit unit, final Tool tool, final int version) {
+      this.unit = unit;
+      this.tool = tool;
+      this.version = version;
+    }
+
+    /** Whether the unit still holds the tool, and is still on the map. */
+    private boolean isLive() {
+      return unit.getToolVersion() == version
+          && (unit.getGroup() != null || storage.getUnit(unit.getX(), unit.getY()) == unit);
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package strategy.world;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import strategy.Config;
+import strategy.producible.unit.Unit;
+
+/**
+ * <b>Looks up the targets of every unit in parallel, ahead of their turns.</b>
+ *
+ * <p>The map is divided in square regions of {@link Config#PARALLEL_REGION_SIZE} cells, and the
+ * units of each region are planned by one task of a {@link ForkJoinPool}. Planning only reads the
+ * map. Units then play their turns one after the other, in the usual order: moves, mining and
+ * food are applied exactly as in a sequential turn, so two units going for the same cell or the
+ * last food are resolved the same way. Plans only save each unit its search (see {@link
+ * Unit#planTarget(WorldMap)}), so results do not depend on the number of threads.
+ */
+final class TurnPlanner implements AutoCloseable {
+  private final WorldMap worldMap;
+  private final ForkJoinPool pool;
+  private final int regionsX;
+
+  TurnPlanner(final WorldMap worldMap, final int parallelism) {
+    this.worldMap = worldMap;
+    pool = new ForkJoinPool(parallelism);
+    regionsX = (worldMap.width() + Config.PARALLEL_REGION_SIZE - 1) / Config.PARALLEL_REGION_SIZE;
+  }
+
+  void plan(final List<Unit> units) {
+    Map<Integer, List<Unit>> regions = new HashMap<>();
+    for (Unit unit : units) {
+      int region =
+          unit.getY() / Config.PARALLEL_REGION_SIZE * regionsX
+              + unit.getX() / Config.PARALLEL_REGION_SIZE;
+      regions.computeIfAbsent(region, key -> new ArrayList<>()).add(unit);
+    }
+    pool.submit(
+            () ->
+                regions.values().parallelStream()
+                    .forEach(region -> region.forEach(unit -> unit.planTarget(worldMap))))
+        .join();
+  }
+
+  /** Stops the threads of the pool once the tasks submitted to it are done. */
+  @Override
+  public void close() {
+    pool.shutdown();
+  }
+}
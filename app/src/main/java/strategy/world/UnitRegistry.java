@@ -0,0 +1,137 @@
+package strategy.world;
+
+import java.util.AbstractCollection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import strategy.producible.unit.Unit;
+
+/**
+ * <b>The units occupying the cells of a map, by index of their cell ({@code y * width + x}).</b>
+ *
+ * <p>Cells are grouped in pages of {@link #PAGE_SIZE} consecutive indexes. A page is allocated the
+ * first time a unit stands on one of its cells, and holds the occupant of each of its cells with a
+ * bitmask of the cells that have one, so that the registry takes memory in proportion to the area
+ * units have been to rather than to the whole map. Moving a unit is then a few array writes,
+ * without any allocation, and units are iterated in the order of their cells by skipping empty
+ * pages and empty words of 64 cells at once.
+ *
+ * <p>The registry is a read-only view: it changes as units move, so it must not be iterated while
+ * they do.
+ */
+final class UnitRegistry extends AbstractCollection<Unit> {
+  private static final int PAGE_BITS = 12;
+  private static final int PAGE_SIZE = 1 << PAGE_BITS;
+  private static final int WORDS = PAGE_SIZE / 64;
+
+  /** Occupants of the cells of each page, or null for pages no unit has been to. */
+  private final Unit[][] occupants;
+  /** Bitmask of the occupied cells of each page. */
+  private final long[][] occupied;
+  /** Number of occupied cells of each page. */
+  private final int[] counts;
+  /** Bitmask of the pages with an occupied cell. */
+  private final long[] pages;
+
+  private int size = 0;
+
+  UnitRegistry(final int cells) {
+    int pageCount = (int) (((long) cells + PAGE_SIZE - 1) >>> PAGE_BITS);
+    occupants = new Unit[pageCount][];
+    occupied = new long[pageCount][];
+    counts = new int[pageCount];
+    pages = new long[(pageCount + 63) >>> 6];
+  }
+
+  /** Sets the occupant of a cell, or clears it if {@code unit} is null. */
+  void set(final int index, final Unit unit) {
+    int page = index >>> PAGE_BITS;
+    int slot = index & (PAGE_SIZE - 1);
+    if (occupants[page] == null) {
+      if (unit == null) return;
+      occupants[page] = new Unit[PAGE_SIZE];
+      occupied[page] = new long[WORDS];
+    }
+    Unit previous = occupants[page][slot];
+    occupants[page][slot] = unit;
+    if (previous == null && unit != null) {
+      occupied[page][slot >>> 6] |= 1L << slot;
+      if (counts[page]++ == 0) {
+        pages[page >>> 6] |= 1L << page;
+      }
+      size++;
+    } else if (previous != null && unit == null) {
+      occupied[page][slot >>> 6] &= ~(1L << slot);
+      if (--counts[page] == 0) {
+        pages[page >>> 6] &= ~(1L << page);
+      }
+      size--;
+    }
+  }
+
+  /**
+   * Copies the units to {@code into}, in the order of their cells.
+   *
+   * @return the number of units copied, see {@link #size()}
+   */
+  int copyTo(final Unit[] into) {
+    int count = 0;
+    for (int index = following(0); index >= 0; index = following(index + 1)) {
+      into[count++] = occupants[index >>> PAGE_BITS][index & (PAGE_SIZE - 1)];
+    }
+    return count;
+  }
+
+  /** Index of the first occupied cell from {@code from}, or -1 if there is none. */
+  private int following(final int from) {
+    int page = from >>> PAGE_BITS;
+    if (page >= counts.length) return -1;
+    int word = (from & (PAGE_SIZE - 1)) >>> 6;
+    long bits = counts[page] == 0 ? 0 : occupied[page][word] & -1L << from;
+    while (bits == 0) {
+      if (counts[page] == 0 || ++word == WORDS) {
+        page = nextPage(page + 1);
+        if (page < 0) return -1;
+        word = 0;
+      }
+      bits = occupied[page][word];
+    }
+    return page << PAGE_BITS | word << 6 | Long.numberOfTrailingZeros(bits);
+  }
+
+  /** The first page from {@code from} with an occupied cell, or -1 if there is none. */
+  private int nextPage(final int from) {
+    if (from >= counts.length) return -1;
+    int word = from >>> 6;
+    long bits = pages[word] & -1L << from;
+    while (bits == 0) {
+      if (++word == pages.length) return -1;
+      bits = pages[word];
+    }
+    return word << 6 | Long.numberOfTrailingZeros(bits);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public Iterator<Unit> iterator() {
+    return new Iterator<>() {
+      private int next = following(0);
+
+      @Override
+      public boolean hasNext() {
+        return next >= 0;
+      }
+
+      @Override
+      public Unit next() {
+        if (next < 0) throw new NoSuchElementException();
+        Unit unit = occupants[next >>> PAGE_BITS][next & (PAGE_SIZE - 1)];
+        next = following(next + 1);
+        return unit;
+      }
+    };
+  }
+}
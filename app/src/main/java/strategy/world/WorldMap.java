@@ -1,36 +1,448 @@
 package strategy.world;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
-import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.IntStream;
 import org.jetbrains.annotations.NotNull;
+import strategy.Config;
 import strategy.Game;
 import strategy.Utils;
+import strategy.metrics.TurnMetrics;
+import strategy.metrics.TurnMetrics.Phase;
+import strategy.producible.unit.Group;
 import strategy.producible.unit.Unit;
 
 /**
  * Class representing a world map.
  *
- * <p>The world map is a 2D grid of {@link Cell}s.
+ * <p>The world map is a 2D grid of {@link Cell}s, kept in a {@link CellStorage} chosen by its
+ * {@link Layout}.
  */
-public record WorldMap(int width, int height, List<List<Cell>> cells) {
-
-  public WorldMap(final int width, final int height) {
-    this(width, height, new ArrayList<>());
-    for (int i = 0; i < height; i++) {
-      List<Cell> row = new ArrayList<>();
-      for (int j = 0; j < width; j++) {
-        Cell cell = new Cell(j, i);
-        row.add(j, cell);
+public final class WorldMap {
+  private final int width;
+  private final int height;
+  private final CellStorage storage;
+  private final ResourceIndex resources;
+  private final ToolIndex tools;
+  /** Distance fields built so far, by bitmask of their resource types. */
+  private final DistanceField[] fields = new DistanceField[1 << ResourceType.values().length];
+
+  /**
+   * Units occupying a cell, by index of their cell ({@code y * width + x}), so that units play in
+   * the order of the cells they stand on, row after row.
+   */
+  private final UnitRegistry units;
+  /** The units playing the current turn, in order, grown on demand. */
+  private Unit[] playing = new Unit[0];
+  /** Resources left on the map, by type ordinal. */
+  private final long[] remaining = new long[ResourceType.values().length];
+
+  private long remainingTotal = 0;
+  /** Sequence of the next unit entering the map, see {@link Unit#getSequence()}. */
+  private long nextSequence = 0;
+  /** Times the units a tool factory may equip changed, see {@link #getToolCandidateChanges()}. */
+  private long toolCandidateChanges = 0;
+  /** Units (not groups) placed on this map that are currently able to mine. */
+  private int miningUnits = 0;
+
+  private final Layout layout;
+  private final long seed;
+  private final long generationTime;
+  /**
+   * Whether the world is {@link Layout#CHUNKED}, in which case it has no resource index nor
+   * distance fields, as they would span the whole world.
+   */
+  private final boolean chunked;
+
+  private CellSearch search;
+  private boolean distanceFields = false;
+  private TurnPlanner planner;
+  /** Cells whose amount changed, as pairs of index and amount, or null when not recording. */
+  private int[] changes;
+
+  private int changeCount = 0;
+  /** Number of the turn being played, or of the last one played. */
+  private int turn = 0;
+
+  public WorldMap(final int width, final int height, final long seed) {
+    this(width, height, Layout.OBJECT, seed);
+  }
+
+  /**
+   * Generates a world.
+   *
+   * <p>The world is generated by {@link ChunkGenerator}, so a seed always generates the same world.
+   * Rows of chunks are generated in parallel, straight into the storage, except for {@link
+   * Layout#CHUNKED} worlds, which generate chunks as they are explored.
+   */
+  public WorldMap(final int width, final int height, final Layout layout, final long seed) {
+    this(width, height, layout, seed, null);
+  }
+
+  /**
+   * Creates a world whose cells are filled by {@code cells} rather than generated, such as a world
+   * read from a snapshot. {@code cells} returns the resources it put in the cells, by type ordinal.
+   */
+  WorldMap(
+      final int width,
+      final int height,
+      final Layout layout,
+      final long seed,
+      final Function<CellStorage, long[]> cells) {
+    this.width = width;
+    this.height = height;
+    this.layout = layout;
+    this.seed = seed;
+    storage =
+        switch (layout) {
+          case OBJECT -> new ObjectCellStorage(this, width, height);
+          case FLAT -> new FlatCellStorage(this, width, height);
+          case CHUNKED ->
+              new ChunkedCellStorage(this, width, height, seed, Config.CHUNK_BUDGET);
+        };
+    tools = new ToolIndex(storage);
+    units = new UnitRegistry(width * height);
+    chunked = layout == Layout.CHUNKED;
+    if (chunked) {
+      if (cells != null) {
+        throw new IllegalArgumentException("Chunked worlds are always generated");
+      }
+      resources = null;
+      generationTime = 0;
+      return;
+    }
+    long start = System.nanoTime();
+    if (cells != null) {
+      generated(cells.apply(storage));
+    } else {
+      int bands = (height + Config.CHUNK_SIZE - 1) / Config.CHUNK_SIZE;
+      long[][] generated = new long[bands][];
+      IntStream.range(0, bands).parallel().forEach(band -> generated[band] = generateBand(band));
+      for (long[] band : generated) {
+        generated(band);
+      }
+    }
+    resources = new ResourceIndex(storage);
+    generationTime = System.nanoTime() - start;
+  }
+
+  /** Generates a row of chunks, and returns the amount of resources it holds by type ordinal. */
+  private long[] generateBand(final int band) {
+    long[] generated = new long[remaining.length];
+    for (int chunk = 0; chunk * Config.CHUNK_SIZE < width; chunk++) {
+      long[] resources = ChunkGenerator.generate(seed, chunk, band, width, height, storage::init);
+      for (int type = 0; type < generated.length; type++) {
+        generated[type] += resources[type];
+      }
+    }
+    return generated;
+  }
+
+  /** Adds resources that have just been generated to the resources left on the map. */
+  void generated(final long[] resources) {
+    for (int type = 0; type < remaining.length; type++) {
+      remaining[type] += resources[type];
+      remainingTotal += resources[type];
+    }
+  }
+
+  /**
+   * Time it took to generate the world and its resource index, in nanoseconds, or 0 for chunked
+   * worlds.
+   */
+  public long getGenerationTime() {
+    return generationTime;
+  }
+
+  public Layout getLayout() {
+    return layout;
+  }
+
+  /**
+   * Copies the state of the world that changes during a game, so that it can be written to a
+   * snapshot while the game goes on.
+   *
+   * @throws IllegalStateException for chunked worlds, which cannot be saved
+   */
+  public WorldSnapshot capture() {
+    if (chunked) {
+      throw new IllegalStateException("Chunked worlds cannot be saved");
+    }
+    int[] amounts;
+    if (storage instanceof FlatCellStorage flat) {
+      amounts = flat.copyAmounts();
+    } else {
+      amounts = new int[width * height];
+      for (int y = 0; y < height; y++) {
+        for (int x = 0; x < width; x++) {
+          amounts[y * width + x] = storage.getAmount(x, y);
+        }
       }
-      cells.add(i, row);
     }
+    return new WorldSnapshot(this, amounts);
+  }
+
+  /** Seed the world was generated from. */
+  public long getSeed() {
+    return seed;
+  }
+
+  public int width() {
+    return width;
+  }
+
+  public int height() {
+    return height;
+  }
+
+  public CellStorage storage() {
+    return storage;
   }
 
   public Cell getCell(final int x, final int y) {
-    int newX = Utils.clamp(x, 0, cells.get(0).size() - 1);
-    int newY = Utils.clamp(y, 0, cells.size() - 1);
-    return cells.get(newY).get(newX);
+    int newX = Utils.clamp(x, 0, width - 1);
+    int newY = Utils.clamp(y, 0, height - 1);
+    return storage.getCell(newX, newY);
+  }
+
+  /** Gets the cell at {@code y * width + x}, or null for a negative index. */
+  Cell cellAt(final int index) {
+    return index < 0 ? null : storage.getCell(index % width, index / width);
+  }
+
+  /** The search engine shared by the cells of this map. */
+  public CellSearch search() {
+    if (search == null) {
+      search =
+          chunked
+              ? new CellSearch(storage, Config.CHUNKED_SEARCH_RADIUS)
+              : new CellSearch(storage);
+    }
+    return search;
+  }
+
+  /** The index of the cells that still hold resources, or null for chunked worlds. */
+  public ResourceIndex resources() {
+    return resources;
+  }
+
+  /**
+   * Whether nearest-resource queries go through shared {@link DistanceField}s.
+   *
+   * <p>A field is built the first time a set of types is queried, then kept up to date as cells
+   * are depleted. Each field holds two ints per cell, so they are only worth it when many units
+   * share the same targets. Chunked worlds do not use them.
+   */
+  public void setDistanceFields(final boolean distanceFields) {
+    this.distanceFields = distanceFields && !chunked;
+    if (!distanceFields) {
+      Arrays.fill(fields, null);
+    }
+  }
+
+  /**
+   * Finds the closest non-empty cell of one of the given types.
+   *
+   * @param maxRadius how far (in moves) to search, or {@link CellSearch#UNBOUNDED}
+   * @return the index ({@code y * width + x}) of the closest matching cell, or -1 if there is none
+   *     within the radius
+   */
+  public int findClosestResource(
+      final int x, final int y, final List<ResourceType> types, final int maxRadius) {
+    long start = TurnMetrics.start();
+    int closest = closestResource(x, y, types, maxRadius);
+    TurnMetrics.end(Phase.SEARCH, start);
+    return closest;
+  }
+
+  private int closestResource(
+      final int x, final int y, final List<ResourceType> types, final int maxRadius) {
+    if (chunked) {
+      return search().findClosestResource(x, y, types, maxRadius);
+    }
+    if (!distanceFields) {
+      return resources.findClosest(x, y, types, maxRadius);
+    }
+    int mask = ResourceType.mask(types);
+    DistanceField field = fields[mask];
+    if (field == null) {
+      field = createField(mask);
+    }
+    return field.distance(x, y) <= maxRadius ? field.nearest(x, y) : -1;
+  }
+
+  /** Builds a distance field, once even if units planning in parallel ask for it together. */
+  private synchronized DistanceField createField(final int mask) {
+    if (fields[mask] == null) {
+      fields[mask] = new DistanceField(storage, mask);
+    }
+    return fields[mask];
+  }
+
+  /**
+   * Sets how many threads look up the targets of the units at the start of each turn.
+   *
+   * <p>With more than one thread, every unit's search runs in parallel before any unit plays (see
+   * {@link TurnPlanner}). Units still play one after the other, so a game plays out the same with
+   * any number of threads. Chunked worlds always plan sequentially, as their searches share one
+   * engine and loading chunks mutates the storage.
+   */
+  public void setParallelism(final int threads) {
+    if (planner != null) {
+      planner.close();
+    }
+    planner = threads > 1 && !chunked ? new TurnPlanner(this, threads) : null;
+  }
+
+  /** Number of the turn being played, or of the last one played. */
+  public int getTurn() {
+    return turn;
+  }
+
+  /** Sets the number of the last turn played, when restoring a saved game. */
+  public void setTurn(final int turn) {
+    this.turn = turn;
+  }
+
+  /** Called by a cell that has just been mined. */
+  void mined(final int x, final int y, final ResourceType type, final int amount) {
+    remaining[type.ordinal()] -= amount;
+    remainingTotal -= amount;
+    if (changes != null) {
+      if (changeCount == changes.length) {
+        changes = Arrays.copyOf(changes, changes.length * 2);
+      }
+      changes[changeCount++] = y * width + x;
+      changes[changeCount++] = storage.getAmount(x, y);
+    }
+  }
+
+  /** Starts or stops recording the cells whose amount changes, see {@link #takeChanges()}. */
+  public void setRecordingChanges(final boolean recording) {
+    changes = recording ? new int[64] : null;
+    changeCount = 0;
+  }
+
+  /**
+   * Gets the cells whose amount changed since the last call, while recording.
+   *
+   * @return pairs of cell index ({@code y * width + x}) and new amount, in the order of the changes
+   */
+  public int[] takeChanges() {
+    if (changes == null) return new int[0];
+    int[] taken = Arrays.copyOf(changes, changeCount);
+    changeCount = 0;
+    return taken;
+  }
+
+  /**
+   * Lowers the amount of a cell to {@code amount}, as if it was mined, when replaying recorded
+   * changes.
+   */
+  public void applyChange(final int index, final int amount) {
+    Cell cell = cellAt(index);
+    int current = cell.getAmount();
+    if (amount > current) {
+      throw new IllegalArgumentException("Cell " + index + " cannot go back up to " + amount);
+    }
+    cell.mine(current - amount);
+  }
+
+  /** Called by a cell whose last resources have just been mined. */
+  void depleted(final int x, final int y, final ResourceType type) {
+    if (resources != null) {
+      resources.remove(x, y, type);
+    }
+    for (DistanceField field : fields) {
+      if (field != null && field.covers(type)) {
+        field.remove(x, y);
+      }
+    }
+  }
+
+  /** Called by a cell whose occupant has just been replaced. */
+  void occupantChanged(final int x, final int y, final Unit unit) {
+    units.set(y * width + x, unit);
+  }
+
+  /**
+   * Binds a unit entering the map to it, so that the map can count the units able to mine. A group
+   * binds its members.
+   */
+  void attach(final Unit unit) {
+    if (unit instanceof Group group) {
+      group.getUnits().forEach(this::attach);
+      return;
+    }
+    if (unit.getWorldMap() == this) return;
+    unit.setWorldMap(this);
+    if (unit.getSequence() < 0) {
+      unit.setSequence(nextSequence++);
+    } else {
+      nextSequence = Math.max(nextSequence, unit.getSequence() + 1);
+    }
+    tools.add(unit);
+    toolCandidateChanges++;
+    if (unit.canMine()) {
+      miningUnits++;
+    }
+  }
+
+  /** Called by a unit placed on this map whose tool has just changed. */
+  public void toolChanged(final Unit unit) {
+    tools.toolChanged(unit);
+    toolCandidateChanges++;
+  }
+
+  /** Called by a group that dropped members, as no cell was left for them to disperse to. */
+  public void unitsDropped() {
+    toolCandidateChanges++;
+  }
+
+  /**
+   * Gets how many times the units a tool factory may equip changed: a unit entered the map, was
+   * given another tool or was dropped from it. While it stays the same, {@link
+   * #findToolCandidate(List)} finds the same unit.
+   */
+  public long getToolCandidateChanges() {
+    return toolCandidateChanges;
+  }
+
+  /**
+   * Finds the unit a tool factory should equip: the unit without a tool that entered the map first
+   * or, if every unit has a tool, the unit with the least efficient tool mining exactly the given
+   * targets, the first to enter the map among equals. Members of groups are considered on their
+   * own.
+   *
+   * @return the unit, or null if there is none
+   */
+  public Unit findToolCandidate(final List<ResourceType> targets) {
+    return tools.candidate(targets);
+  }
+
+  /** Called by a unit placed on this map whose ability to mine has just changed. */
+  public void miningChanged(final boolean canMine) {
+    miningUnits += canMine ? 1 : -1;
+  }
+
+  /**
+   * How many of the given resource are left on the map. Chunked worlds only count the chunks
+   * generated so far.
+   */
+  public long getRemainingResources(final ResourceType type) {
+    return remaining[type.ordinal()];
+  }
+
+  /** How many resources of any type are left on the map, see {@link #getRemainingResources}. */
+  public long getRemainingResources() {
+    return remainingTotal;
+  }
+
+  /** How many units on the map, counting group members individually, are able to mine. */
+  public int getMiningUnitCount() {
+    return miningUnits;
   }
 
   /**
@@ -39,26 +451,59 @@ public record WorldMap(int width, int height, List<List<Cell>> cells) {
    * @param units the units to insert
    */
   public void insertUnits(final @NotNull List<Unit> units) {
-    units.forEach(unit -> cells.get(unit.getY()).get(unit.getX()).insertUnit(unit));
+    units.forEach(unit -> storage.getCell(unit.getX(), unit.getY()).insertUnit(unit));
   }
 
   public Game.Status turn(Inventory inventory) {
-    getUnits().stream().filter(u -> !u.hasPlayed()).forEach(u -> u.turn(this, inventory));
-    getUnits().forEach(u -> u.setHasPlayed(false));
-    if (cells.stream().allMatch(row -> row.stream().allMatch(cell -> cell.getAmount() == 0))) {
+    turn++;
+    // Units move while they play, so they play from a copy of the registry.
+    if (playing.length < this.units.size()) {
+      playing = new Unit[Math.max(this.units.size(), playing.length * 2)];
+    }
+    int count = this.units.copyTo(playing);
+    List<Unit> units = Arrays.asList(playing).subList(0, count);
+    if (planner != null) {
+      long start = TurnMetrics.start();
+      planner.plan(units);
+      TurnMetrics.end(Phase.PLAN, start);
+    }
+    units.stream().filter(u -> !u.hasPlayed()).forEach(u -> u.turn(this, inventory));
+    Arrays.fill(playing, 0, count, null);
+    this.units.forEach(u -> u.setHasPlayed(false));
+    if (remainingTotal == 0 && !chunked) {
       return Game.Status.WON;
     }
-    if (getUnits().stream().noneMatch(Unit::canMine)) {
+    if (miningUnits == 0) {
       return Game.Status.LOST;
     }
     return Game.Status.RUNNING;
   }
 
-  public List<Unit> getUnits() {
-    return cells.stream()
-        .flatMap(List::stream)
-        .map(Cell::getUnit)
-        .filter(Objects::nonNull)
-        .toList();
+  /**
+   * Gets the units occupying a cell of the map, in the order they play a turn: by the cells they
+   * stand on, row after row, then from left to right. Units in a {@link Group} are represented by
+   * their group.
+   *
+   * @return a read-only view of the unit registry, which must not be iterated while units move
+   */
+  public Collection<Unit> getUnits() {
+    return units;
+  }
+
+  public int getUnitCount() {
+    return units.size();
+  }
+
+  /** How the cells of a world map are laid out in memory. */
+  public enum Layout {
+    /** One {@link Cell} object per tile, held in a list of rows. */
+    OBJECT,
+    /** Parallel primitive arrays indexed by {@code y * width + x}, with cells as views. */
+    FLAT,
+    /**
+     * Chunks generated as they are explored and evicted under a memory budget, see {@link
+     * ChunkedCellStorage}. Chunked worlds can never be won, as there are always chunks left.
+     */
+    CHUNKED
   }
 }
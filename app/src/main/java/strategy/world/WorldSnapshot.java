@@ -0,0 +1,214 @@
+package strategy.world;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.IntStream;
+import strategy.Config;
+import strategy.producible.unit.Unit;
+
+/**
+ * <b>A copy of the state of a {@link WorldMap}, to be written to a snapshot.</b>
+ *
+ * <p>Taking the copy only copies what changes as the game is played: the amounts of the cells, the
+ * units and the turn. Cell types never change once the world is generated, so they are read from
+ * the map itself while the copy is written, which may happen on another thread as the game goes
+ * on.
+ *
+ * <p>In a snapshot, a world is laid out as:
+ *
+ * <ol>
+ *   <li>the length of its state, then its state: size, layout, seed, turn and units;
+ *   <li>from the next multiple of 8, the type of each cell as a byte, by {@code y * width + x};
+ *   <li>from the next multiple of 8, the amount of each cell as an int.
+ * </ol>
+ *
+ * <p>Cells are written and read by bands of rows in parallel.
+ */
+public final class WorldSnapshot {
+  private static final ResourceType[] TYPES = ResourceType.values();
+  private static final int BAND_HEIGHT = Config.CHUNK_SIZE;
+
+  private final CellStorage storage;
+  private final int width;
+  private final int height;
+  private final byte[] state;
+  private final int[] amounts;
+
+  WorldSnapshot(final WorldMap worldMap, final int[] amounts) {
+    storage = worldMap.storage();
+    width = worldMap.width();
+    height = worldMap.height();
+    this.amounts = amounts;
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeInt(width);
+      out.writeInt(height);
+      out.writeByte(worldMap.getLayout().ordinal());
+      out.writeLong(worldMap.getSeed());
+      out.writeInt(worldMap.getTurn());
+      Collection<Unit> units = worldMap.getUnits();
+      out.writeInt(units.size());
+      for (Unit unit : units) {
+        unit.write(out);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    state = bytes.toByteArray();
+  }
+
+  private static long typesOffset(final long offset, final int stateLength) {
+    return MappedFile.align(offset + 4 + stateLength);
+  }
+
+  private static long amountsOffset(final long typesOffset, final long cells) {
+    return MappedFile.align(typesOffset + cells);
+  }
+
+  /** Size of the world in a snapshot, when it is written from {@code offset}. */
+  public long size(final long offset) {
+    long cells = (long) width * height;
+    return amountsOffset(typesOffset(offset, state.length), cells) + 4 * cells - offset;
+  }
+
+  /** Writes the world from {@code offset}, which must be a multiple of 8. */
+  public void write(final MappedFile file, final long offset) {
+    file.putInt(offset, state.length);
+    file.putBytes(offset + 4, state, 0, state.length);
+    long types = typesOffset(offset, state.length);
+    long amounts = amountsOffset(types, (long) width * height);
+    file.putInts(amounts, this.amounts, 0, this.amounts.length);
+    int bands = (height + BAND_HEIGHT - 1) / BAND_HEIGHT;
+    IntStream.range(0, bands)
+        .parallel()
+        .forEach(
+            band -> {
+              int start = band * BAND_HEIGHT;
+              int rows = Math.min(BAND_HEIGHT, height - start);
+              byte[] scratch = new byte[rows * width];
+              for (int y = 0; y < rows; y++) {
+                for (int x = 0; x < width; x++) {
+                  scratch[y * width + x] = (byte) storage.getType(x, start + y).ordinal();
+                }
+              }
+              file.putBytes(types + (long) start * width, scratch, 0, scratch.length);
+            });
+  }
+
+  /** Reads a world written from {@code offset}, with or without its units. */
+  public static WorldMap read(final MappedFile file, final long offset, final boolean withUnits)
+      throws IOException {
+    if (offset > file.size() - 4) {
+      throw new IOException("Corrupt snapshot: no world");
+    }
+    int stateLength = file.getInt(offset);
+    if (stateLength < 0 || offset + 4 + stateLength > file.size()) {
+      throw new IOException("Corrupt snapshot: world state of " + stateLength + " bytes");
+    }
+    byte[] state = new byte[stateLength];
+    file.getBytes(offset + 4, state, 0, stateLength);
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(state));
+    int width = in.readInt();
+    int height = in.readInt();
+    if (width <= 0 || height <= 0) {
+      throw new IOException("Corrupt snapshot: world of " + width + "x" + height + " cells");
+    }
+    int ordinal = in.readUnsignedByte();
+    if (ordinal >= WorldMap.Layout.values().length) {
+      throw new IOException("Corrupt snapshot: world layout " + ordinal);
+    }
+    WorldMap.Layout layout = WorldMap.Layout.values()[ordinal];
+    long seed = in.readLong();
+    int turn = in.readInt();
+    long cells = (long) width * height;
+    long types = typesOffset(offset, stateLength);
+    long amounts = amountsOffset(types, cells);
+    if (amounts + 4 * cells > file.size()) {
+      throw new IOException(
+          "Corrupt snapshot: " + file.size() + " bytes, too short for " + cells + " cells");
+    }
+    WorldMap worldMap;
+    try {
+      worldMap =
+          new WorldMap(
+              width, height, layout, seed, storage -> readCells(file, types, amounts, storage));
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    worldMap.setTurn(turn);
+    if (!withUnits) {
+      return worldMap;
+    }
+    int count = in.readInt();
+    if (count < 0) {
+      throw new IOException("Corrupt snapshot: " + count + " units");
+    }
+    List<Unit> units = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      Unit unit = Unit.read(in);
+      if (unit.getX() < 0 || unit.getX() >= width || unit.getY() < 0 || unit.getY() >= height) {
+        throw new IOException("Corrupt snapshot: unit at " + unit.getX() + ", " + unit.getY());
+      }
+      units.add(unit);
+    }
+    worldMap.insertUnits(units);
+    return worldMap;
+  }
+
+  /**
+   * Fills the storage, and returns the resources read by type ordinal.
+   *
+   * @throws UncheckedIOException if a cell has no valid type
+   */
+  private static long[] readCells(
+      final MappedFile file, final long types, final long amounts, final CellStorage storage) {
+    int width = storage.width();
+    int height = storage.height();
+    int bands = (height + BAND_HEIGHT - 1) / BAND_HEIGHT;
+    return IntStream.range(0, bands)
+        .parallel()
+        .mapToObj(
+            band -> {
+              long[] resources = new long[TYPES.length];
+              int start = band * BAND_HEIGHT;
+              int cells = Math.min(BAND_HEIGHT, height - start) * width;
+              byte[] bandTypes = new byte[cells];
+              int[] bandAmounts = new int[cells];
+              file.getBytes(types + (long) start * width, bandTypes, 0, cells);
+              file.getInts(amounts + 4L * start * width, bandAmounts, 0, cells);
+              for (int i = 0; i < cells; i++) {
+                int ordinal = bandTypes[i] & 0xff;
+                if (ordinal >= TYPES.length) {
+                  throw new UncheckedIOException(
+                      new IOException(
+                          "Corrupt snapshot: resource type "
+                              + ordinal
+                              + " of cell "
+                              + (i % width)
+                              + ", "
+                              + (start + i / width)));
+                }
+                ResourceType type = TYPES[ordinal];
+                storage.init(i % width, start + i / width, type, bandAmounts[i]);
+                resources[type.ordinal()] += bandAmounts[i];
+              }
+              return resources;
+            })
+        .reduce(
+            new long[TYPES.length],
+            (a, b) -> {
+              long[] sum = new long[TYPES.length];
+              for (int i = 0; i < sum.length; i++) {
+                sum[i] = a[i] + b[i];
+              }
+              return sum;
+            });
+  }
+}
@@ -0,0 +1,51 @@
+package strategy;
+
+import java.util.ArrayList;
+import java.util.List;
+import strategy.building.ToolBuilding;
+import strategy.building.UnitBuilding;
+import strategy.world.Inventory;
+import strategy.world.ResourceType;
+import strategy.world.WorldMap;
+
+/** Games played for a while, with buildings of every kind, for the tests of saved games. */
+final class Games {
+  private Games() {}
+
+  /** Creates a game and adds resources and buildings to it, without playing it. */
+  static Game create(final WorldMap.Layout layout, final long seed) {
+    Game game = new Game(60, 40, 6, layout, seed);
+    game.getInventory().addResources(ResourceType.FOOD, 20000);
+    return game;
+  }
+
+  /**
+   * Plays a turn of a game, adding buildings and resources on some turns as a player would.
+   *
+   * @return the status of the game after the turn
+   */
+  static Game.Status step(final Game game, final int turn) {
+    Inventory inventory = game.getInventory();
+    List<List<ResourceType>> jobs = new ArrayList<>(Config.JOBS.values());
+    if (turn % 3 == 0 && inventory.getBuildings().size() < 60) {
+      List<ResourceType> job = jobs.get((turn / 7 + (int) game.getSeed()) % jobs.size());
+      if (turn % 2 == 0) {
+        inventory.addBuilding(new UnitBuilding(job, Utils.seed(game.getSeed(), turn)));
+      } else {
+        inventory.addBuilding(new ToolBuilding(job));
+      }
+    }
+    if (turn % 50 == 25) inventory.addResources(ResourceType.GOLD, 40);
+    if (turn % 41 == 3) inventory.addResources(ResourceType.ROCK, 3);
+    if (turn % 29 == 5) inventory.addResources(ResourceType.WOOD, 2);
+    if (turn % 3 == 0) inventory.addResources(ResourceType.FOOD, 40);
+    return game.step();
+  }
+
+  /** Plays turns of a game, until it ends or the given number of turns was played. */
+  static void play(final Game game, final int from, final int turns) {
+    for (int turn = from; turn < from + turns; turn++) {
+      if (step(game, turn) != Game.Status.RUNNING) return;
+    }
+  }
+}
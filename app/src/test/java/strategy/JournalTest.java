@@ -0,0 +1,44 @@
+package strategy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import strategy.world.WorldMap;
+
+/** Checks that games replayed from journals are the games that were recorded. */
+class JournalTest {
+  @TempDir Path directory;
+
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  void replaysTheRecordedTurns(final boolean compressed) throws IOException {
+    Game game = Games.create(WorldMap.Layout.FLAT, 11);
+    Games.play(game, 0, 10);
+    Path path = directory.resolve("journal");
+    List<Integer> turns = new ArrayList<>();
+    try (Journal journal = Journal.start(game, path, compressed)) {
+      for (int turn = 10; turn < 150; turn++) {
+        Game.Status status = Games.step(game, turn);
+        journal.record(game);
+        int played = game.getWorldMap().getTurn();
+        if (played % 23 == 0 || status != Game.Status.RUNNING) {
+          Snapshot.save(game, directory.resolve("live" + played));
+          turns.add(played);
+        }
+        if (status != Game.Status.RUNNING) break;
+      }
+    }
+    for (int turn : turns) {
+      Path replayed = directory.resolve("replayed");
+      Snapshot.save(Journal.replay(path, turn), replayed);
+      assertEquals(-1, Files.mismatch(directory.resolve("live" + turn), replayed), "turn " + turn);
+    }
+  }
+}
@@ -0,0 +1,96 @@
+package strategy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import strategy.producible.unit.Group;
+import strategy.producible.unit.Unit;
+import strategy.world.CellStorage;
+import strategy.world.ResourceType;
+import strategy.world.WorldMap;
+
+/** Checks that games written as scenarios, with their run-length encoded worlds, load back. */
+class ScenarioTest {
+  @TempDir Path directory;
+
+  @ParameterizedTest
+  @EnumSource(value = WorldMap.Layout.class, names = {"OBJECT", "FLAT"})
+  void loadsAsWritten(final WorldMap.Layout layout) throws IOException {
+    Game game = Games.create(WorldMap.Layout.FLAT, 7);
+    // Mined out cells break the runs of the generated world.
+    Games.play(game, 0, 80);
+    Path path = directory.resolve("scenario");
+    Scenario.write(game, path);
+    Game loaded = Scenario.load(path, layout, 7);
+
+    CellStorage expected = game.getWorldMap().storage();
+    CellStorage actual = loaded.getWorldMap().storage();
+    assertEquals(expected.width(), actual.width());
+    assertEquals(expected.height(), actual.height());
+    for (int y = 0; y < expected.height(); y++) {
+      for (int x = 0; x < expected.width(); x++) {
+        assertEquals(expected.getType(x, y), actual.getType(x, y));
+        assertEquals(expected.getAmount(x, y), actual.getAmount(x, y));
+      }
+    }
+    for (ResourceType type : ResourceType.values()) {
+      assertEquals(
+          game.getInventory().getResources(type), loaded.getInventory().getResources(type));
+    }
+    List<Unit> expectedUnits = members(game);
+    List<Unit> actualUnits = members(loaded);
+    assertEquals(expectedUnits.size(), actualUnits.size());
+    for (int i = 0; i < expectedUnits.size(); i++) {
+      Unit expectedUnit = expectedUnits.get(i);
+      Unit actualUnit = actualUnits.get(i);
+      assertEquals(expectedUnit.getX(), actualUnit.getX());
+      assertEquals(expectedUnit.getY(), actualUnit.getY());
+      assertEquals(expectedUnit.getTool(), actualUnit.getTool());
+      assertEquals(classes(expectedUnit), classes(actualUnit));
+    }
+  }
+
+  @Test
+  void writesTheSameScenarioAgain() throws IOException {
+    Game game = Games.create(WorldMap.Layout.OBJECT, 9);
+    Games.play(game, 0, 40);
+    Path first = directory.resolve("first");
+    Path second = directory.resolve("second");
+    Scenario.write(game, first);
+    Scenario.write(Scenario.load(first, WorldMap.Layout.FLAT, 9), second);
+    assertEquals(-1, Files.mismatch(first, second));
+  }
+
+  @Test
+  void rejectsOtherFiles() throws IOException {
+    Path path = directory.resolve("other");
+    Files.write(path, new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13});
+    assertThrows(IOException.class, () -> Scenario.load(path, WorldMap.Layout.FLAT, 1));
+  }
+
+  /** The units of a game, with groups replaced by their members, as scenarios hold them. */
+  private static List<Unit> members(final Game game) {
+    List<Unit> units = new ArrayList<>();
+    for (Unit unit : game.getWorldMap().getUnits()) {
+      if (unit instanceof Group group) {
+        units.addAll(group.getUnits());
+      } else {
+        units.add(unit);
+      }
+    }
+    return units;
+  }
+
+  private static List<Class<?>> classes(final Unit unit) {
+    return unit.getModifiers().stream().<Class<?>>map(Object::getClass).toList();
+  }
+}
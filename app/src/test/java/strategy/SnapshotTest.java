@@ -0,0 +1,63 @@
+package strategy;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import strategy.world.WorldMap;
+
+/** Checks that games saved to snapshots load back as they were, and play on the same. */
+class SnapshotTest {
+  @TempDir Path directory;
+
+  @ParameterizedTest
+  @EnumSource(value = WorldMap.Layout.class, names = {"OBJECT", "FLAT"})
+  void loadsAsSaved(final WorldMap.Layout layout) throws IOException {
+    Game game = Games.create(layout, 3);
+    Games.play(game, 0, 60);
+    Path saved = directory.resolve("saved");
+    Snapshot.save(game, saved);
+    Game loaded = Snapshot.load(saved);
+    assertEquals(layout, loaded.getWorldMap().getLayout());
+    assertArrayEquals(Files.readAllBytes(saved), save(loaded, "loaded"));
+    // Both games play on the same, as the seed and every building and unit were kept.
+    Games.play(game, 60, 40);
+    Games.play(loaded, 60, 40);
+    assertArrayEquals(save(game, "played"), save(loaded, "loadedPlayed"));
+  }
+
+  @ParameterizedTest
+  @EnumSource(value = WorldMap.Layout.class, names = {"OBJECT", "FLAT"})
+  void rejectsCorruptSnapshotsWithIOException(final WorldMap.Layout layout) throws IOException {
+    Game game = Games.create(layout, 5);
+    Games.play(game, 0, 30);
+    byte[] bytes = save(game, "saved");
+    Path corrupt = directory.resolve("corrupt");
+    SplittableRandom random = new SplittableRandom(5);
+    for (int i = 0; i < 200; i++) {
+      byte[] changed = bytes.clone();
+      changed[random.nextInt(changed.length)] ^= (byte) (1 + random.nextInt(255));
+      Files.write(corrupt, changed);
+      try {
+        Snapshot.load(corrupt);
+      } catch (IOException e) {
+        // Expected of most corruptions; others change amounts and go unnoticed.
+      }
+    }
+    Files.write(corrupt, new byte[] {1, 2, 3});
+    assertThrows(IOException.class, () -> Snapshot.load(corrupt));
+  }
+
+  private byte[] save(final Game game, final String name) throws IOException {
+    Path path = directory.resolve(name);
+    Snapshot.save(game, path);
+    return Files.readAllBytes(path);
+  }
+}
@@ -0,0 +1,98 @@
+package strategy.producible.unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+import strategy.Config;
+import strategy.Game;
+import strategy.producible.Tool;
+import strategy.world.ResourceType;
+import strategy.world.WorldMap;
+
+/** Checks the aggregates a {@link Group} keeps against those computed from its members. */
+class GroupTest {
+  @Test
+  void keepsAggregatesAsMembersChange() {
+    SplittableRandom random = new SplittableRandom(1);
+    Group group = new Group(0, 0);
+    List<Unit> outside = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      outside.add(new Unit(0, 0, new ArrayList<>()));
+    }
+    List<ResourceType> types = List.of(ResourceType.values());
+    for (int step = 0; step < 2000; step++) {
+      List<Unit> members = group.getUnits();
+      switch (random.nextInt(5)) {
+        case 0 -> {
+          if (!outside.isEmpty()) group.addUnit(outside.remove(random.nextInt(outside.size())));
+        }
+        case 1 -> {
+          if (!members.isEmpty()) {
+            Unit unit = members.get(random.nextInt(members.size()));
+            group.removeUnit(unit);
+            outside.add(unit);
+          }
+        }
+        case 2 -> {
+          if (!members.isEmpty()) {
+            Tool tool = Tool.of(1 + random.nextInt(5), random.nextInt(1 << types.size()));
+            members.get(random.nextInt(members.size())).setTool(tool);
+          }
+        }
+        case 3 -> {
+          if (!members.isEmpty()) {
+            members.get(random.nextInt(members.size())).setCanMine(random.nextBoolean());
+          }
+        }
+        default -> {
+          if (!members.isEmpty()) members.get(random.nextInt(members.size())).addXp(1);
+        }
+      }
+      assertAggregates(group);
+    }
+  }
+
+  @Test
+  void keepsAggregatesThroughGames() {
+    int checked = 0;
+    for (long seed = 1; seed <= 4; seed++) {
+      Game game = new Game(40, 30, 30, WorldMap.Layout.FLAT, seed);
+      // Plenty of food lets groups grow, little makes them starve and break up.
+      game.getInventory().addResources(ResourceType.FOOD, seed % 2 == 0 ? 100000 : 900);
+      for (int turn = 0; turn < 200 && game.step() == Game.Status.RUNNING; turn++) {
+        for (Unit unit : game.getWorldMap().getUnits()) {
+          if (unit instanceof Group group) {
+            assertAggregates(group);
+            checked++;
+          }
+        }
+      }
+    }
+    assertEquals(true, checked > 0);
+  }
+
+  private static void assertAggregates(final Group group) {
+    List<Unit> members = group.getUnits();
+    assertEquals(members.stream().mapToInt(Unit::getSpeed).min().orElse(0), group.getSpeed());
+    assertEquals(members.stream().mapToInt(Unit::getHunger).sum(), group.getHunger());
+    assertEquals(members.stream().mapToInt(Unit::getXp).sum(), group.getXp());
+    assertEquals(members.stream().anyMatch(Unit::canMine), group.canMine());
+    for (ResourceType type : ResourceType.values()) {
+      float efficiency = 0;
+      int miners = 0;
+      for (Unit unit : members) {
+        if (unit.canMine() && unit.getTool() != null && unit.getTool().canMine(type)) {
+          efficiency += unit.getEfficiency(type);
+          miners++;
+        }
+      }
+      for (int i = 0; i < miners; i++) {
+        efficiency = (float) (efficiency * Config.GROUP_EFFICIENCY_MULTIPLIER);
+      }
+      assertEquals((int) Math.floor(efficiency), group.getEfficiency(type), type.name());
+    }
+  }
+}
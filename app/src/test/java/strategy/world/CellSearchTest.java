@@ -0,0 +1,118 @@
+package strategy.world;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+import strategy.Config;
+import strategy.Game;
+
+/** Checks the breadth-first searches of {@link CellSearch} against a scan of every cell. */
+class CellSearchTest {
+  private static final int[] RADII = {0, 1, 3, 10, CellSearch.UNBOUNDED};
+
+  @Test
+  void findsTheClosestResource() {
+    for (long seed = 1; seed <= 3; seed++) {
+      WorldMap worldMap = new WorldMap(40, 30, WorldMap.Layout.FLAT, seed);
+      CellStorage storage = worldMap.storage();
+      SplittableRandom random = new SplittableRandom(seed);
+      // Empty most cells, so that searches have to go some way.
+      for (int y = 0; y < storage.height(); y++) {
+        for (int x = 0; x < storage.width(); x++) {
+          if (random.nextInt(10) != 0) {
+            storage.setAmount(x, y, 0);
+          }
+        }
+      }
+      CellSearch search = worldMap.search();
+      for (int i = 0; i < 200; i++) {
+        int x = random.nextInt(storage.width());
+        int y = random.nextInt(storage.height());
+        for (List<ResourceType> types : Config.JOBS.values()) {
+          int expected = closestResource(storage, x, y, ResourceType.mask(types));
+          for (int radius : RADII) {
+            int found = search.findClosestResource(x, y, types, radius);
+            if (expected == Integer.MAX_VALUE || expected > radius) {
+              assertEquals(-1, found);
+              continue;
+            }
+            int foundX = found % storage.width();
+            int foundY = found / storage.width();
+            assertTrue(storage.getAmount(foundX, foundY) > 0);
+            assertTrue(types.contains(storage.getType(foundX, foundY)));
+            assertEquals(expected, Math.abs(foundX - x) + Math.abs(foundY - y));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  void findsTheClosestEmptyCells() {
+    for (long seed = 1; seed <= 3; seed++) {
+      Game game = new Game(12, 10, 12, WorldMap.Layout.FLAT, seed);
+      CellStorage storage = game.getWorldMap().storage();
+      CellSearch search = game.getWorldMap().search();
+      SplittableRandom random = new SplittableRandom(seed);
+      for (int i = 0; i < 100; i++) {
+        int x = random.nextInt(storage.width());
+        int y = random.nextInt(storage.height());
+        int radius = RADII[random.nextInt(RADII.length)];
+        int[] found = new int[5];
+        int count = search.findClosestEmpty(x, y, radius, found);
+        // Each cell is the closest one left empty by those found before it.
+        List<Integer> taken = new ArrayList<>();
+        for (int k = 0; k < found.length; k++) {
+          int expected = closestEmpty(storage, x, y, taken);
+          if (expected == Integer.MAX_VALUE || expected > radius) {
+            assertEquals(k, count);
+            break;
+          }
+          int cell = found[k];
+          assertEquals(expected, distance(storage, cell, x, y));
+          assertEquals(null, storage.getUnit(cell % storage.width(), cell / storage.width()));
+          assertTrue(!taken.contains(cell));
+          taken.add(cell);
+        }
+        int single = search.findClosestEmpty(x, y, radius);
+        assertEquals(count == 0 ? -1 : found[0], single);
+      }
+    }
+  }
+
+  /** Distance to the closest non-empty cell of a type of the mask, or MAX_VALUE if none. */
+  static int closestResource(final CellStorage storage, final int x, final int y, final int mask) {
+    int best = Integer.MAX_VALUE;
+    for (int cellY = 0; cellY < storage.height(); cellY++) {
+      for (int cellX = 0; cellX < storage.width(); cellX++) {
+        if (storage.getAmount(cellX, cellY) > 0
+            && (mask & storage.getType(cellX, cellY).bit()) != 0) {
+          best = Math.min(best, Math.abs(cellX - x) + Math.abs(cellY - y));
+        }
+      }
+    }
+    return best;
+  }
+
+  private static int closestEmpty(
+      final CellStorage storage, final int x, final int y, final List<Integer> taken) {
+    int best = Integer.MAX_VALUE;
+    for (int cellY = 0; cellY < storage.height(); cellY++) {
+      for (int cellX = 0; cellX < storage.width(); cellX++) {
+        int cell = cellY * storage.width() + cellX;
+        if (storage.getUnit(cellX, cellY) == null && !taken.contains(cell)) {
+          best = Math.min(best, Math.abs(cellX - x) + Math.abs(cellY - y));
+        }
+      }
+    }
+    return best;
+  }
+
+  private static int distance(final CellStorage storage, final int cell, final int x, final int y) {
+    return Math.abs(cell % storage.width() - x) + Math.abs(cell / storage.width() - y);
+  }
+}
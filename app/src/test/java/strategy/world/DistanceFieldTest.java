@@ -0,0 +1,77 @@
+package strategy.world;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+import strategy.Config;
+
+/** Checks that repairing a {@link DistanceField} gives the field computed from scratch. */
+class DistanceFieldTest {
+  @Test
+  void repairsMatchAFieldComputedAgain() {
+    for (long seed = 1; seed <= 3; seed++) {
+      WorldMap worldMap = new WorldMap(50, 35, WorldMap.Layout.FLAT, seed);
+      CellStorage storage = worldMap.storage();
+      SplittableRandom random = new SplittableRandom(seed);
+      for (List<ResourceType> types : Config.JOBS.values()) {
+        int mask = ResourceType.mask(types);
+        DistanceField field = new DistanceField(storage, mask);
+        List<Integer> sources = sources(storage, mask);
+        int removed = 0;
+        while (!sources.isEmpty()) {
+          int source = sources.remove(random.nextInt(sources.size()));
+          int x = source % storage.width();
+          int y = source / storage.width();
+          storage.setAmount(x, y, 0);
+          field.remove(x, y);
+          // Comparing after every removal would take long on the first ones, which change little.
+          if (++removed % 25 == 0 || sources.size() < 10) {
+            assertSameField(storage, new DistanceField(storage, mask), field);
+          }
+        }
+        assertEquals(-1, field.nearest(0, 0));
+      }
+    }
+  }
+
+  @Test
+  void agreesWithTheResourceIndex() {
+    WorldMap worldMap = new WorldMap(64, 40, WorldMap.Layout.FLAT, 7);
+    CellStorage storage = worldMap.storage();
+    for (List<ResourceType> types : Config.JOBS.values()) {
+      DistanceField field = new DistanceField(storage, ResourceType.mask(types));
+      for (int y = 0; y < storage.height(); y++) {
+        for (int x = 0; x < storage.width(); x++) {
+          assertEquals(
+              worldMap.resources().findClosest(x, y, types, CellSearch.UNBOUNDED),
+              field.nearest(x, y));
+        }
+      }
+    }
+  }
+
+  private static List<Integer> sources(final CellStorage storage, final int mask) {
+    List<Integer> sources = new ArrayList<>();
+    for (int y = 0; y < storage.height(); y++) {
+      for (int x = 0; x < storage.width(); x++) {
+        if (storage.getAmount(x, y) > 0 && (mask & storage.getType(x, y).bit()) != 0) {
+          sources.add(y * storage.width() + x);
+        }
+      }
+    }
+    return sources;
+  }
+
+  private static void assertSameField(
+      final CellStorage storage, final DistanceField expected, final DistanceField actual) {
+    for (int y = 0; y < storage.height(); y++) {
+      for (int x = 0; x < storage.width(); x++) {
+        assertEquals(expected.distance(x, y), actual.distance(x, y));
+        assertEquals(expected.nearest(x, y), actual.nearest(x, y));
+      }
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package strategy.world;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+import strategy.Config;
+
+/** Checks {@link ResourceIndex} against a scan of every cell, as cells are depleted. */
+class ResourceIndexTest {
+  @Test
+  void findsTheClosestCellWithTheLowestIndex() {
+    for (long seed = 1; seed <= 3; seed++) {
+      // Not a multiple of the bucket size, so that the last buckets are partial.
+      WorldMap worldMap = new WorldMap(70, 45, WorldMap.Layout.FLAT, seed);
+      CellStorage storage = worldMap.storage();
+      ResourceIndex index = worldMap.resources();
+      SplittableRandom random = new SplittableRandom(seed);
+      for (int round = 0; round < 6; round++) {
+        for (ResourceType type : ResourceType.values()) {
+          assertEquals(count(storage, type), index.count(type));
+        }
+        for (int i = 0; i < 100; i++) {
+          int x = random.nextInt(storage.width());
+          int y = random.nextInt(storage.height());
+          int radius = random.nextBoolean() ? CellSearch.UNBOUNDED : random.nextInt(30);
+          for (List<ResourceType> types : Config.JOBS.values()) {
+            assertEquals(
+                closest(storage, x, y, ResourceType.mask(types), radius),
+                index.findClosest(x, y, types, radius));
+          }
+        }
+        // Mine out a sixth of the cells left, which removes them from the index.
+        for (int y = 0; y < storage.height(); y++) {
+          for (int x = 0; x < storage.width(); x++) {
+            if (storage.getAmount(x, y) > 0 && random.nextInt(6) == 0) {
+              worldMap.getCell(x, y).mine(Integer.MAX_VALUE);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private static int count(final CellStorage storage, final ResourceType type) {
+    int count = 0;
+    for (int y = 0; y < storage.height(); y++) {
+      for (int x = 0; x < storage.width(); x++) {
+        if (storage.getAmount(x, y) > 0 && storage.getType(x, y) == type) {
+          count++;
+        }
+      }
+    }
+    return count;
+  }
+
+  /** The closest matching cell within the radius, the one with the lowest index among equals. */
+  private static int closest(
+      final CellStorage storage, final int x, final int y, final int mask, final int radius) {
+    int best = -1;
+    int bestDistance = radius;
+    for (int cellY = 0; cellY < storage.height(); cellY++) {
+      for (int cellX = 0; cellX < storage.width(); cellX++) {
+        if (storage.getAmount(cellX, cellY) == 0
+            || (mask & storage.getType(cellX, cellY).bit()) == 0) {
+          continue;
+        }
+        int distance = Math.abs(cellX - x) + Math.abs(cellY - y);
+        if (distance < bestDistance || distance == bestDistance && best < 0) {
+          best = cellY * storage.width() + cellX;
+          bestDistance = distance;
+        }
+      }
+    }
+    return best;
+  }
+}
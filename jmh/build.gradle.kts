@@ -0,0 +1,31 @@
+/*
+ * JMH benchmarks of the game.
+ *
+ * Run them with `gradle :jmh:jmh`. Extra JMH options can be passed with -PjmhArgs, for example
+ * `gradle :jmh:jmh -PjmhArgs="WorldBenchmark.turn -p mapSize=1000"`.
+ */
+
+plugins {
+    java
+}
+
+repositories {
+    mavenCentral()
+}
+
+val jmhVersion = "1.37"
+
+dependencies {
+    implementation(project(":app"))
+    implementation("org.openjdk.jmh:jmh-core:$jmhVersion")
+    annotationProcessor("org.openjdk.jmh:jmh-generator-annprocess:$jmhVersion")
+}
+
+tasks.register<JavaExec>("jmh") {
+    group = "benchmark"
+    description = "Runs the JMH benchmarks, with GC and allocation profiling."
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    args("-prof", "gc")
+    project.findProperty("jmhArgs")?.let { args(it.toString().split(" ").filter(String::isNotBlank)) }
+}
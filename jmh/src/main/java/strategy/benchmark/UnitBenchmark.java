@@ -0,0 +1,82 @@
+package strategy.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import strategy.Config;
+import strategy.producible.Tool;
+import strategy.producible.unit.Group;
+import strategy.producible.unit.Unit;
+import strategy.producible.unit.modifier.UnitModifier;
+import strategy.world.ResourceType;
+
+/** <b>Benchmarks of the stats units and groups compute whenever they act.</b> */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class UnitBenchmark {
+  private Unit unit;
+
+  @Setup
+  public void setUp() throws ReflectiveOperationException {
+    unit = newUnit();
+  }
+
+  /** A group of {@code groupSize} units. */
+  @State(Scope.Thread)
+  public static class GroupState {
+    @Param({"2", "10", "100"})
+    public int groupSize;
+
+    private Group group;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+      group = new Group(0, 0);
+      for (int i = 0; i < groupSize; i++) {
+        group.addUnit(newUnit());
+      }
+    }
+  }
+
+  private static Unit newUnit() throws ReflectiveOperationException {
+    List<UnitModifier> modifiers = new ArrayList<>();
+    for (Class<? extends UnitModifier> clazz : Config.UNIT_MODIFIERS) {
+      modifiers.add(clazz.getDeclaredConstructor().newInstance());
+    }
+    Unit unit = new Unit(0, 0, modifiers);
+    unit.setTool(Tool.of(1, List.of(ResourceType.GOLD, ResourceType.ROCK)));
+    return unit;
+  }
+
+  @Benchmark
+  public int unitGetSpeed() {
+    return unit.getSpeed();
+  }
+
+  /** Speed of a unit whose modifiers just changed, so that its stats are resolved again. */
+  @Benchmark
+  public int unitGetSpeedResolved() {
+    unit.invalidateStats();
+    return unit.getSpeed();
+  }
+
+  @Benchmark
+  public int groupGetEfficiency(final GroupState state) {
+    return state.group.getEfficiency(ResourceType.GOLD);
+  }
+}
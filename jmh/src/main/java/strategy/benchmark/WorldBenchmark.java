@@ -0,0 +1,96 @@
+package strategy.benchmark;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import strategy.Config;
+import strategy.building.ToolBuilding;
+import strategy.world.Cell;
+import strategy.world.ResourceType;
+
+/** <b>Benchmarks of the operations run on the whole world every turn.</b> */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WorldBenchmark {
+  private static final List<ResourceType> TARGETS = List.of(ResourceType.GOLD);
+  /** Targets of a job of the starting units, so that a tool factory always has a unit to equip. */
+  private static final List<ResourceType> TOOL_TARGETS = Config.JOBS.get("Miner");
+
+  /** Cells the searches start from, cycled through so that each call searches elsewhere. */
+  private final Cell[] origins = new Cell[1024];
+
+  private int next = 0;
+  private PrintStream out;
+
+  @Setup(Level.Iteration)
+  public void setUp(final WorldState world) {
+    SplittableRandom random = new SplittableRandom(world.mapSize);
+    for (int i = 0; i < origins.length; i++) {
+      origins[i] =
+          world.worldMap.getCell(random.nextInt(world.mapSize), random.nextInt(world.mapSize));
+    }
+    out = System.out;
+    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+  }
+
+  @TearDown(Level.Iteration)
+  public void tearDown() {
+    System.setOut(out);
+  }
+
+  private Cell nextOrigin() {
+    next = (next + 1) % origins.length;
+    return origins[next];
+  }
+
+  @Benchmark
+  public Object turn(final WorldState world) {
+    return world.worldMap.turn(world.game.getInventory());
+  }
+
+  @Benchmark
+  public Cell findClosestResources(final WorldState world) {
+    return nextOrigin().findClosestResources(TARGETS, world.worldMap);
+  }
+
+  @Benchmark
+  public Cell findClosestEmpty(final WorldState world) {
+    return nextOrigin().findClosestEmpty(world.worldMap);
+  }
+
+  /**
+   * A full production cycle of a tool factory, from its countdown to handing out a tool to the
+   * miner with the least efficient tool.
+   */
+  @Benchmark
+  public ToolBuilding toolBuildingProduce(final WorldState world) {
+    ToolBuilding building = new ToolBuilding(TOOL_TARGETS);
+    for (int i = 0; i <= Config.BUILDING_PRODUCTION_TIME; i++) {
+      building.produce(world.worldMap, world.game.getInventory());
+    }
+    return building;
+  }
+
+  @Benchmark
+  public void render(final WorldState world) {
+    world.game.render();
+  }
+}
@@ -0,0 +1,63 @@
+package strategy.benchmark;
+
+import java.util.SplittableRandom;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import strategy.Config;
+import strategy.Game;
+import strategy.world.Cell;
+import strategy.world.ResourceType;
+import strategy.world.WorldMap;
+
+/**
+ * <b>A seeded game shared by the benchmarks, rebuilt before each iteration.</b>
+ *
+ * <p>The world is square and stored flat. {@code density} is the fraction of the generated
+ * resource cells that are kept: the others are mined out before the iteration starts, to measure
+ * searches on a depleted world. The inventory is stocked with food and with what tools cost, so
+ * that units never starve and tool factories always hand out their tools.
+ */
+@State(Scope.Benchmark)
+public class WorldState {
+  private static final long SEED = 42;
+
+  @Param({"100", "1000"})
+  public int mapSize;
+
+  @Param({"30", "300"})
+  public int units;
+
+  @Param({"1.0", "0.1"})
+  public double density;
+
+  public Game game;
+  public WorldMap worldMap;
+
+  @Setup(Level.Iteration)
+  public void setUp() {
+    game =
+        new Game(
+            mapSize,
+            mapSize,
+            Math.max(1, units / Config.JOBS.size()),
+            WorldMap.Layout.FLAT,
+            SEED);
+    worldMap = game.getWorldMap();
+    SplittableRandom random = new SplittableRandom(SEED);
+    for (int y = 0; y < mapSize; y++) {
+      for (int x = 0; x < mapSize; x++) {
+        Cell cell = worldMap.getCell(x, y);
+        if (cell.getAmount() > 0 && random.nextDouble() >= density) {
+          cell.mine(cell.getAmount());
+        }
+      }
+    }
+    game.getInventory().addResources(ResourceType.FOOD, Integer.MAX_VALUE / 2);
+    for (ResourceType type : Config.TOOL_COST.keySet()) {
+      game.getInventory().addResources(type, Integer.MAX_VALUE / 4);
+    }
+  }
+}
@@ -8,4 +8,4 @@
  */
 
 rootProject.name = "strategy_game_dp"
-include("app")
+include("app", "jmh")